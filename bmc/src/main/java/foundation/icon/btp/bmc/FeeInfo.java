@@ -16,15 +16,14 @@
 
 package foundation.icon.btp.bmc;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
 
 import java.math.BigInteger;
-import java.util.List;
 
 public class FeeInfo {
     private String network;
@@ -71,17 +70,7 @@ public class FeeInfo {
         FeeInfo obj = new FeeInfo();
         reader.beginList();
         obj.setNetwork(reader.readString());
-        reader.beginList();
-        List<BigInteger> valuesList = new ArrayList<>();
-        while(reader.hasNext()) {
-            valuesList.add(reader.readBigInteger());
-        }
-        BigInteger[] values = new BigInteger[valuesList.size()];
-        for(int i=0; i<valuesList.size(); i++) {
-            values[i] = valuesList.get(i);
-        }
-        obj.setValues(values);
-        reader.end();
+        obj.setValues(Codec.readBigIntegers(reader));
         reader.end();
         return obj;
     }
@@ -89,12 +78,7 @@ public class FeeInfo {
     public void writeObject(ObjectWriter writer) {
         writer.beginList(2);
         writer.write(this.getNetwork());
-        BigInteger[] values = this.getValues();
-        writer.beginList(values.length);
-        for(BigInteger v : values) {
-            writer.write(v);
-        }
-        writer.end();
+        Codec.writeBigIntegers(writer, this.getValues());
         writer.end();
     }
 
@@ -38,11 +38,21 @@ import static foundation.icon.btp.bmv.bsc.Header.*;
 public class BTPMessageVerifier implements BMV {
     private final VarDB<Address> bmc = Context.newVarDB("bmc", Address.class);
     private final VarDB<BigInteger> cid = Context.newVarDB("cid", BigInteger.class);
-    private final VarDB<BlockTree> tree = Context.newVarDB("tree", BlockTree.class);
+    private final BlockTree tree = new BlockTree("tree");
     private final VarDB<Snapshot> snap = Context.newVarDB("snap", Snapshot.class);
     private final VarDB<MerkleTreeAccumulator> mta = Context.newVarDB("mta", MerkleTreeAccumulator.class);
     private final DictDB<byte[], Header> heads = Context.newDictDB("heads", Header.class);
-
+    // snapshots of the blocks in the tree, the snapshot of the root is in `snap`
+    private final DictDB<byte[], Snapshot.Delta> snaps = Context.newDictDB("snaps", Snapshot.Delta.class);
+    // blocks loaded or added in the transaction, cleared by flushBlocks()
+    private final Map<Hash, Header> headCache = new HashMap<>();
+    private final Map<Hash, Snapshot.Delta> snapCache = new HashMap<>();
+    private final List<Hash> newBlocks = new ArrayList<>();
+    private Snapshot rootSnap;
+
+    /**
+     * @param recents signers of the last blocks up to the header, ordered from the oldest to the newest
+     */
     public BTPMessageVerifier(Address bmc, BigInteger chainId, byte[] header,
                               byte[][] recents, byte[][] validators) {
 
@@ -63,7 +73,8 @@ public class BTPMessageVerifier implements BMV {
 
         this.bmc.set(bmc);
         this.cid.set(chainId);
-        this.tree.set(new BlockTree(head.getHash()));
+        this.tree.init(head.getHash());
+        this.tree.flush();
         this.mta.set(mta);
         this.heads.set(head.getHash().toBytes(), head);
         this.snap.set(new Snapshot(
@@ -71,13 +82,13 @@ public class BTPMessageVerifier implements BMV {
                 head.getNumber(),
                 new EthAddresses(toSortedList(validators)),
                 new EthAddresses(head.getValidators(config)),
-                new EthAddresses(toSortedList(recents))));
+                new EthAddresses(toList(recents))));
     }
 
     @External(readonly = true)
     public BMVStatus getStatus() {
         MerkleTreeAccumulator mta = this.mta.get();
-        BlockTree tree = this.tree.get();
+        BlockTree tree = this.tree;
         Header head = this.heads.get(tree.getRoot().toBytes());
         BMVStatus status = new BMVStatus();
         status.setHeight(head.getNumber().longValue());
@@ -89,7 +100,7 @@ public class BTPMessageVerifier implements BMV {
     public byte[][] handleRelayMessage(String _bmc, String _prev, BigInteger _seq, byte[] _msg) {
         checkAccessible();
 
-        BlockTree tree = this.tree.get();
+        BlockTree tree = this.tree;
         MerkleTreeAccumulator mta = this.mta.get();
         ChainConfig config = ChainConfig.fromChainID(this.cid.get());
         List<Header> confirmations = new ArrayList<>();
@@ -110,7 +121,8 @@ public class BTPMessageVerifier implements BMV {
             }
         }
 
-        this.tree.set(tree);
+        tree.flush();
+        flushBlocks();
         this.mta.set(mta);
 
         int i = 0;
@@ -122,61 +134,37 @@ public class BTPMessageVerifier implements BMV {
     }
 
     private List<Header> handleBlockUpdate(ChainConfig config, BlockUpdate bu, BlockTree tree, MerkleTreeAccumulator mta) {
-        List<Header> newHeads = new ArrayList<>(bu.getHeaders());
+        List<Header> newHeads = bu.getHeaders();
         if (newHeads.isEmpty()) {
             return new ArrayList<>();
         }
 
         Hash hash = newHeads.get(0).getParentHash();
-        List<Hash> ancestors = tree.getStem(hash);
-        Context.require(ancestors.size() > 0, "Inconsistent block");
-
-        // load heads in storage
-        Snapshot snap = this.snap.get();
-        Map<Hash, Header> heads = new HashMap<>();
-        Map<Hash, Snapshot> snaps = new HashMap<>();
-        for (Hash ancestor : ancestors) {
-            Header head = this.heads.get(ancestor.toBytes());
-            heads.put(ancestor, head);
-
-            if (snap.getNumber().longValue() + 1L == head.getNumber().longValue()) {
-                snap = snap.apply(config, head);
-            }
-            snaps.put(ancestor, snap);
-        }
+        Context.require(tree.contains(hash), "Inconsistent block");
 
-        Header parent = heads.get(hash);
+        Header parent = getHeader(hash);
+        Snapshot snap = getSnapshot(hash);
         for (Header newHead : newHeads) {
             verify(config, newHead, parent, snap);
             tree.add(snap.getHash(), newHead.getHash());
-            snap = snap.apply(config, newHead);
-            snaps.put(snap.getHash(), snap);
-            heads.put(snap.getHash(), newHead);
+            Snapshot newSnap = snap.apply(config, newHead);
+            putBlock(newHead, newSnap, snap);
+            snap = newSnap;
             parent = newHead;
         }
 
-        List<Header> confirmations = confirm(config, snaps, heads, snap.getHash());
+        List<Header> confirmations = confirm(config, tree, snap);
         if (confirmations.size() > 0) {
             Hash newRoot = confirmations.get(confirmations.size()-1).getHash();
-            this.snap.set(snaps.get(newRoot));
+            Snapshot newRootSnap = getSnapshot(newRoot);
+            this.snap.set(newRootSnap);
+            this.rootSnap = newRootSnap;
             tree.prune(newRoot, new BlockTree.OnRemoveListener() {
                 @Override
                 public void onRemove(Hash node) {
-                    if (ancestors.contains(node)) {
-                        BTPMessageVerifier.this.heads.set(node.toBytes(), null);
-                    } else {
-                        for (Header newHead : newHeads) {
-                            if (newHead.getHash().equals(node)) {
-                                newHeads.remove(newHead);
-                                break;
-                            }
-                        }
-                    }
+                    removeBlock(node);
                 }
             });
-            for (Header newHead : newHeads) {
-                this.heads.set(newHead.getHash().toBytes(), newHead);
-            }
             for (Header confirmation : confirmations) {
                 mta.add(confirmation.getHash().toBytes());
             }
@@ -184,6 +172,85 @@ public class BTPMessageVerifier implements BMV {
         return confirmations;
     }
 
+    private Header getHeader(Hash hash) {
+        Header head = headCache.get(hash);
+        if (head == null) {
+            head = this.heads.get(hash.toBytes());
+            Context.require(head != null, "No header");
+            head.setHash(hash);
+            headCache.put(hash, head);
+        }
+        return head;
+    }
+
+    private Snapshot.Delta getSnapshotDelta(Hash hash) {
+        Snapshot.Delta delta = snapCache.get(hash);
+        if (delta == null) {
+            delta = this.snaps.get(hash.toBytes());
+            if (delta != null) {
+                snapCache.put(hash, delta);
+            }
+        }
+        return delta;
+    }
+
+    private Snapshot getRootSnapshot() {
+        if (rootSnap == null) {
+            rootSnap = this.snap.get();
+        }
+        return rootSnap;
+    }
+
+    /**
+     * Returns the snapshot of the block in the tree. Validator sets are taken from the root
+     * if the block having them is pruned, because they are not changed since the block.
+     */
+    private Snapshot getSnapshot(Hash hash) {
+        Snapshot root = getRootSnapshot();
+        if (root.getHash().equals(hash)) {
+            return root;
+        }
+        Snapshot.Delta delta = getSnapshotDelta(hash);
+        Context.require(delta != null, "No snapshot");
+        if (delta.hasValidatorSets()) {
+            return delta.toSnapshot(null);
+        }
+        Snapshot.Delta sets = getSnapshotDelta(delta.getSetsAt());
+        return delta.toSnapshot(sets != null && sets.hasValidatorSets() ? sets.toSnapshot(null) : root);
+    }
+
+    private Hash getValidatorSetsAt(Hash hash) {
+        Snapshot.Delta delta = getSnapshotDelta(hash);
+        return delta != null ? delta.getSetsAt() : hash;
+    }
+
+    private void putBlock(Header head, Snapshot snap, Snapshot parent) {
+        Hash hash = head.getHash();
+        headCache.put(hash, head);
+        snapCache.put(hash, Snapshot.Delta.of(snap, parent, getValidatorSetsAt(parent.getHash())));
+        newBlocks.add(hash);
+    }
+
+    private void removeBlock(Hash hash) {
+        headCache.remove(hash);
+        snapCache.remove(hash);
+        if (!newBlocks.remove(hash)) {
+            this.heads.set(hash.toBytes(), null);
+            this.snaps.set(hash.toBytes(), null);
+        }
+    }
+
+    private void flushBlocks() {
+        for (Hash hash : newBlocks) {
+            this.heads.set(hash.toBytes(), headCache.get(hash));
+            this.snaps.set(hash.toBytes(), snapCache.get(hash));
+        }
+        newBlocks.clear();
+        headCache.clear();
+        snapCache.clear();
+        rootSnap = null;
+    }
+
     private Header handleBlockProof(BlockProof bp, MerkleTreeAccumulator mta) {
         Header head = bp.getHeader();
         if (head.getNumber().compareTo(BigInteger.valueOf(mta.getHeight())) > 0) {
@@ -219,17 +286,22 @@ public class BTPMessageVerifier implements BMV {
         }
 
         Context.require(head != null, "No confirmed header for message proof");
-        for (ReceiptProof rp : mp.getReceiptProofs()) {
-            Receipt receipt;
-            byte[] receiptBytes;
-            try {
-                receiptBytes = MerklePatriciaTree.prove(
-                        head.getReceiptHash().toBytes(), rp.getKey(), rp.getProof());
-            } catch (MerklePatriciaTree.MPTException e) {
-                throw BMVException.unknown(e.getMessage());
-            }
+        List<ReceiptProof> rps = mp.getReceiptProofs();
+        byte[][] keys = new byte[rps.size()][];
+        byte[][][] proofs = new byte[rps.size()][][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rps.get(i).getKey();
+            proofs[i] = rps.get(i).getProof();
+        }
+        byte[][] receiptsBytes;
+        try {
+            receiptsBytes = MerklePatriciaTree.proveAll(head.getReceiptHash().toBytes(), keys, proofs);
+        } catch (MerklePatriciaTree.MPTException e) {
+            throw BMVException.unknown(e.getMessage());
+        }
 
-            receipt = Receipt.fromBytes(receiptBytes);
+        for (byte[] receiptBytes : receiptsBytes) {
+            Receipt receipt = Receipt.fromBytes(receiptBytes);
             Context.require(receipt.getStatus() != Receipt.StatusFailed, "Failed receipt");
             for (EventLog log : receipt.getLogs()) {
                 if (!log.getAddress().equals(prev)) {
@@ -304,9 +376,8 @@ public class BTPMessageVerifier implements BMV {
         Context.require(diff.compareTo(parent.getGasLimit().divide(GAS_LIMIT_BOUND_DIVISOR)) < 0,
                 "Invalid gas limit");
 
-        Context.require(snap.getValidators().contains(head.getCoinbase()), "Unauthorized validator");
-        Context.require(!snap.getRecents().contains(head.getCoinbase()) ||
-                snap.getRecents().size() <= snap.getValidators().size() / 2 + 1, "Recently signed");
+        Context.require(snap.isValidator(head.getCoinbase()), "Unauthorized validator");
+        Context.require(!snap.isRecentlySigned(head.getCoinbase()), "Recently signed");
         if (snap.inturn(head.getCoinbase())) {
             Context.require(head.getDifficulty().equals(INTURN_DIFF), "Wrong difficulty(in-turn)");
         } else {
@@ -314,39 +385,74 @@ public class BTPMessageVerifier implements BMV {
         }
     }
 
-    // sorted by leaf to root
-    private List<Header> confirm(ChainConfig config, Map<Hash, Snapshot> snaps, Map<Hash, Header> heads, Hash leaf) {
+    // sorted by root to leaf
+    private List<Header> confirm(ChainConfig config, BlockTree tree, Snapshot leaf) {
+        long rootNumber = getRootSnapshot().getNumber().longValue();
+        long leafNumber = leaf.getNumber().longValue();
+        if (leafNumber - leafNumber % config.Epoch > rootNumber) {
+            // candidates are changed after the root
+            return confirmByWalk(config, tree, leaf.getHash());
+        }
+
+        long number = leaf.getConfirmedNumber(rootNumber);
+        if (number == rootNumber) {
+            return new ArrayList<>();
+        }
+        Hash hash = leaf.getHash();
+        for (long i = leafNumber; i > number; i--) {
+            hash = tree.getParent(hash);
+        }
+        return collect(tree.getRoot(), hash);
+    }
+
+    private List<Header> collect(Hash from, Hash to) {
+        List<Header> cols = new ArrayList<>();
+        Header head = getHeader(to);
+        while (!head.getHash().equals(from)) {
+            cols.add(head);
+            head = getHeader(head.getParentHash());
+        }
+        reverse(cols);
+        return cols;
+    }
+
+    // sorted by root to leaf
+    private List<Header> confirmByWalk(ChainConfig config, BlockTree tree, Hash leaf) {
         List<Header> confirmations = new ArrayList<>();
-        Header head = heads.get(leaf);
-        Snapshot snap = snaps.get(head.getParentHash());
+        Hash root = tree.getRoot();
+        Header head = getHeader(leaf);
         Map<EthAddress, Boolean> validators = new HashMap<>();
-        while (snap != null) {
+        while (!head.getHash().equals(root)) {
+            Snapshot snap = getSnapshot(head.getParentHash());
             EthAddresses newValidators = snap.getCandidates();
             validators.put(head.getCoinbase(), Boolean.TRUE);
             if (config.isEpoch(head.getNumber())) {
                 EthAddresses oldValidators = snap.getValidators();
                 if (validators.size() > oldValidators.size() / 2 &&
                         countBy(validators, newValidators) > newValidators.size() * 2 / 3) {
-                    confirmations.add(heads.get(head.getHash()));
+                    confirmations.add(head);
                 } else {
                     confirmations.clear();
                 }
             } else if (!confirmations.isEmpty() ||
                     countBy(validators, newValidators) > newValidators.size() * 2 / 3) {
-                confirmations.add(heads.get(head.getHash()));
+                confirmations.add(head);
             }
-            head = heads.get(head.getParentHash());
-            snap = snaps.get(head.getParentHash());
+            head = getHeader(head.getParentHash());
         }
 
-        for (int i = 0; i < confirmations.size()/2; i++) {
-            Header tmp = confirmations.get(i);
-            confirmations.set(i, confirmations.get(confirmations.size()-1-i));
-            confirmations.set(confirmations.size()-1-i, tmp);
-        }
+        reverse(confirmations);
         return confirmations;
     }
 
+    private static void reverse(List<Header> heads) {
+        for (int i = 0; i < heads.size() / 2; i++) {
+            Header tmp = heads.get(i);
+            heads.set(i, heads.get(heads.size()-1-i));
+            heads.set(heads.size()-1-i, tmp);
+        }
+    }
+
     private static int countBy(Map<EthAddress, Boolean> vals, EthAddresses newVals) {
         int cnt = 0;
         for (int i = 0; i < newVals.size(); i++) {
@@ -376,7 +482,7 @@ public class BTPMessageVerifier implements BMV {
             EthAddresses vals = snap.getValidators();
             long number = head.getNumber().longValue();
             EthAddress inturn = vals.get((int)(number % (long)vals.size()));
-            if (snap.getRecents().contains(inturn)) {
+            if (snap.isRecentlySigned(inturn)) {
                 return 0L;
             }
         }
@@ -389,11 +495,16 @@ public class BTPMessageVerifier implements BMV {
         }
     }
 
-    private List<EthAddress> toSortedList(byte[][] addrs) {
+    private List<EthAddress> toList(byte[][] addrs) {
         List<EthAddress> list = new ArrayList<>();
         for (int i = 0; i < addrs.length; i++) {
             list.add(new EthAddress(addrs[i]));
         }
+        return list;
+    }
+
+    private List<EthAddress> toSortedList(byte[][] addrs) {
+        List<EthAddress> list = toList(addrs);
         EthAddresses.sort(list);
         return list;
     }
@@ -15,15 +15,20 @@
  */
 package foundation.icon.btp.bmv.bsc;
 
+import foundation.icon.score.util.ArrayUtil;
 import foundation.icon.score.util.StringUtil;
 import score.ObjectReader;
 import score.ObjectWriter;
 import scorex.util.ArrayList;
+import scorex.util.HashMap;
 
 import java.util.List;
+import java.util.Map;
 
 public class EthAddresses {
     private List<EthAddress> addresses;
+    // address => last index, built on the first lookup
+    private Map<EthAddress, Integer> indexes;
 
     public EthAddresses(EthAddress[] addresses) {
         this.addresses = new ArrayList<>(List.of(addresses));
@@ -65,14 +70,27 @@ public class EthAddresses {
     }
 
     public boolean contains(EthAddress address) {
-        return addresses.contains(address);
+        return lastIndexOf(address) >= 0;
+    }
+
+    public int lastIndexOf(EthAddress address) {
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            for (int i = 0; i < addresses.size(); i++) {
+                indexes.put(addresses.get(i), i);
+            }
+        }
+        Integer i = indexes.get(address);
+        return i != null ? i : -1;
     }
 
     public void add(EthAddress newAddress) {
         addresses.add(newAddress);
+        indexes = null;
     }
 
     public EthAddress remove(int i) {
+        indexes = null;
         return addresses.remove(i);
     }
 
@@ -111,32 +129,18 @@ public class EthAddresses {
     }
 
     public static void sort(EthAddress[] a) {
-        int len = a.length;
-        for (int i = 0; i < len; i++) {
-            EthAddress v = a[i];
-            for (int j = i+1; j < len; j++) {
-                if (v.compareTo(a[j]) > 0) {
-                    EthAddress t = v;
-                    v = a[j];
-                    a[j] = t;
-                }
-            }
-            a[i] = v;
-        }
+        ArrayUtil.sort(a);
     }
 
     public static void sort(List<EthAddress> a) {
         int len = a.size();
+        EthAddress[] arr = new EthAddress[len];
         for (int i = 0; i < len; i++) {
-            EthAddress v = a.get(i);
-            for (int j = i+1; j < len; j++) {
-                if (v.compareTo(a.get(j)) > 0) {
-                    EthAddress t = v;
-                    v = a.get(j);
-                    a.set(j, t);
-                }
-            }
-            a.set(i, v);
+            arr[i] = a.get(i);
+        }
+        ArrayUtil.sort(arr);
+        for (int i = 0; i < len; i++) {
+            a.set(i, arr[i]);
         }
     }
 }
@@ -57,6 +57,7 @@ public class Header {
 
     // caches
     private Hash hashCache;
+    private EthAddress signerCache;
 
     public Header(Hash parentHash, Hash uncleHash, EthAddress coinbase, Hash root,
             Hash txHash, Hash receiptHash, byte[] bloom, BigInteger difficulty,
@@ -140,6 +141,11 @@ public class Header {
         return hashCache;
     }
 
+    // headers are stored with their hashes as keys, so it's given without hashing again on loading
+    void setHash(Hash hash) {
+        this.hashCache = hash;
+    }
+
     public List<EthAddress> getValidators(ChainConfig config) {
         Context.require(extra.length > EXTRA_VANITY + EXTRA_SEAL, "No validators bytes");
         Context.require(config.isEpoch(this.number), "Validators does not exist, if it is not epoch");
@@ -155,7 +161,18 @@ public class Header {
         return vals;
     }
 
+    /**
+     * Returns the signer recovered from the seal. It's recovered once and kept on the header,
+     * so the chain id of later calls are ignored.
+     */
     public EthAddress getSigner(BigInteger cid) {
+        if (signerCache == null) {
+            signerCache = recoverSigner(cid);
+        }
+        return signerCache;
+    }
+
+    EthAddress recoverSigner(BigInteger cid) {
         Context.require(extra.length >= EXTRA_SEAL, "Invalid seal bytes");
         byte[] signature = Arrays.copyOfRange(extra, extra.length - EXTRA_SEAL, extra.length);
         byte[] pubkey = Context.recoverKey("ecdsa-secp256k1", getSealHash(cid), signature, false);
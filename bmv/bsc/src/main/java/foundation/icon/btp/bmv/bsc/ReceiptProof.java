@@ -15,6 +15,7 @@
  */
 package foundation.icon.btp.bmv.bsc;
 
+import foundation.icon.score.util.Codec;
 import score.Context;
 import score.ObjectReader;
 import scorex.util.ArrayList;
@@ -31,12 +32,24 @@ public class ReceiptProof {
     }
 
     public static ReceiptProof readObject(ObjectReader r) {
+        r.beginList();
+        byte[] key = r.readByteArray();
+        byte[][] proof = Codec.readByteArrays(r);
+        r.end();
+        return new ReceiptProof(key, proof);
+    }
+
+    public static ReceiptProof readCompactObject(ObjectReader r, byte[][] nodes) {
         r.beginList();
         byte[] key = r.readByteArray();
         r.beginList();
         List<byte[]> proof = new ArrayList<>();
         while (r.hasNext()) {
-            proof.add(r.readByteArray());
+            int index = r.readInt();
+            if (index < 0 || index >= nodes.length) {
+                throw BMVException.unknown("invalid proof node index");
+            }
+            proof.add(nodes[index]);
         }
         r.end();
         r.end();
@@ -84,6 +84,7 @@ public class RelayMessage {
         public static final int BLOCK_UPDATE = 1;
         public static final int BLOCK_PROOF = 2;
         public static final int MESSAGE_PROOF = 3;
+        public static final int COMPACT_MESSAGE_PROOF = 4;
         private final int type;
         private final byte[] payload;
 
@@ -100,6 +101,8 @@ public class RelayMessage {
                     return BlockProof.fromBytes(payload);
                 } else if (type == MESSAGE_PROOF) {
                     return MessageProof.fromBytes(payload);
+                } else if (type == COMPACT_MESSAGE_PROOF) {
+                    return MessageProof.fromCompactBytes(payload);
                 }
             } catch (Exception e) {
                 throw BMVException.unknown("invalid relay message payload");
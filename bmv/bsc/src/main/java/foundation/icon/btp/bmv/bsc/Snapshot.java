@@ -18,8 +18,10 @@ package foundation.icon.btp.bmv.bsc;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
+import scorex.util.ArrayList;
 
 import java.math.BigInteger;
+import java.util.List;
 
 public class Snapshot {
     private Hash hash;
@@ -27,14 +29,22 @@ public class Snapshot {
     private EthAddresses validators;
     private EthAddresses candidates;
     private EthAddresses recents;
+    // numbers of the last blocks signed by candidates, only numbers after the root are meaningful
+    private long[] lastSigned;
 
     public Snapshot(Hash hash, BigInteger number, EthAddresses validators,
             EthAddresses candidates, EthAddresses recents) {
+        this(hash, number, validators, candidates, recents, new long[candidates.size()]);
+    }
+
+    private Snapshot(Hash hash, BigInteger number, EthAddresses validators,
+            EthAddresses candidates, EthAddresses recents, long[] lastSigned) {
         this.hash = hash;
         this.number = number;
         this.validators = validators;
         this.candidates = candidates;
         this.recents = recents;
+        this.lastSigned = lastSigned;
     }
 
     public static void writeObject(ObjectWriter w, Snapshot o) {
@@ -58,10 +68,106 @@ public class Snapshot {
         return new Snapshot(hash, number, validators, candidates, recents);
     }
 
+    /**
+     * Snapshot of a block in the tree, which keeps validator sets only on the block changing them.
+     * Other blocks refer to the block having their validator sets by {@code setsAt}.
+     */
+    public static class Delta {
+        private final Hash setsAt;
+        private final Snapshot snapshot;
+
+        private Delta(Hash setsAt, Snapshot snapshot) {
+            this.setsAt = setsAt;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns the delta of the snapshot applied to the parent, {@code parentSetsAt} is the block
+         * having validator sets of the parent.
+         */
+        public static Delta of(Snapshot snapshot, Snapshot parent, Hash parentSetsAt) {
+            boolean sameSets = snapshot.validators == parent.validators
+                    && snapshot.candidates == parent.candidates;
+            return new Delta(sameSets ? parentSetsAt : snapshot.hash, snapshot);
+        }
+
+        public Hash getSetsAt() {
+            return setsAt;
+        }
+
+        public boolean hasValidatorSets() {
+            return setsAt.equals(snapshot.hash);
+        }
+
+        /**
+         * Returns the snapshot with validator sets of {@code sets} if it doesn't have them.
+         */
+        public Snapshot toSnapshot(Snapshot sets) {
+            if (hasValidatorSets()) {
+                return snapshot;
+            }
+            return new Snapshot(snapshot.hash, snapshot.number, sets.validators, sets.candidates,
+                    snapshot.recents, snapshot.lastSigned);
+        }
+
+        public static void writeObject(ObjectWriter w, Delta o) {
+            Snapshot s = o.snapshot;
+            boolean hasSets = o.hasValidatorSets();
+            w.beginList(7);
+            w.write(o.setsAt);
+            w.write(s.hash);
+            w.write(s.number);
+            w.writeNullable(hasSets ? s.validators : null);
+            w.writeNullable(hasSets ? s.candidates : null);
+            w.write(s.recents);
+            w.beginList(s.lastSigned.length);
+            for (long number : s.lastSigned) {
+                w.write(number);
+            }
+            w.end();
+            w.end();
+        }
+
+        public static Delta readObject(ObjectReader r) {
+            r.beginList();
+            Hash setsAt = r.read(Hash.class);
+            Hash hash = r.read(Hash.class);
+            BigInteger number = r.readBigInteger();
+            EthAddresses validators = r.readNullable(EthAddresses.class);
+            EthAddresses candidates = r.readNullable(EthAddresses.class);
+            EthAddresses recents = r.read(EthAddresses.class);
+            List<Long> numbers = new ArrayList<>();
+            r.beginList();
+            while (r.hasNext()) {
+                numbers.add(r.readLong());
+            }
+            r.end();
+            r.end();
+            long[] lastSigned = new long[numbers.size()];
+            for (int i = 0; i < lastSigned.length; i++) {
+                lastSigned[i] = numbers.get(i);
+            }
+            return new Delta(setsAt, new Snapshot(hash, number, validators, candidates, recents, lastSigned));
+        }
+    }
+
     public boolean inturn(EthAddress validator) {
-        BigInteger offset = number.add(BigInteger.ONE).mod(BigInteger.valueOf(validators.size()));
-        EthAddress[] vals = validators.toArray();
-        return vals[offset.intValue()].equals(validator);
+        int offset = (int) ((number.longValue() + 1) % validators.size());
+        return validators.get(offset).equals(validator);
+    }
+
+    public boolean isValidator(EthAddress address) {
+        return validators.contains(address);
+    }
+
+    /**
+     * Returns whether the validator signed one of the last validators/2 blocks, which means
+     * it's not allowed to sign the next block.
+     */
+    public boolean isRecentlySigned(EthAddress validator) {
+        // recents has signers of the last validators/2+1 blocks including this block
+        int i = recents.lastIndexOf(validator);
+        return i >= 0 && i > recents.size() - (validators.size() / 2 + 1);
     }
 
     public Snapshot apply(ChainConfig config, Header head) {
@@ -71,7 +177,6 @@ public class Snapshot {
         BigInteger newNumber = head.getNumber();
         EthAddresses newValidators;
         EthAddresses newCandidates;
-        EthAddresses newRecents = new EthAddresses(recents);
         BigInteger epoch = BigInteger.valueOf(config.Epoch);
 
         newValidators = newNumber.mod(epoch).equals(BigInteger.valueOf(validators.size() / 2))
@@ -82,14 +187,48 @@ public class Snapshot {
             ? new EthAddresses(head.getValidators(config))
             : candidates;
 
-        newRecents.add(head.getCoinbase());
-        if (newRecents.size() > newValidators.size() / 2) {
-            for (int i = 0; i < newRecents.size() - newValidators.size()/2; i++) {
-                newRecents.remove(i);
-            }
+        long[] newLastSigned = new long[newCandidates.size()];
+        for (int i = 0; i < newLastSigned.length; i++) {
+            int j = newCandidates == candidates ? i : candidates.lastIndexOf(newCandidates.get(i));
+            newLastSigned[i] = j >= 0 ? lastSigned[j] : 0L;
+        }
+        int signer = newCandidates.lastIndexOf(head.getCoinbase());
+        if (signer >= 0) {
+            newLastSigned[signer] = newNumber.longValue();
+        }
+
+        // signers in the window of the last validators/2+1 blocks
+        int limit = newValidators.size() / 2 + 1;
+        List<EthAddress> signers = new ArrayList<>();
+        for (int i = Math.max(0, recents.size() + 1 - limit); i < recents.size(); i++) {
+            signers.add(recents.get(i));
         }
+        signers.add(head.getCoinbase());
+        EthAddresses newRecents = new EthAddresses(signers);
 
-        return new Snapshot(newHash, newNumber, newValidators, newCandidates, newRecents);
+        return new Snapshot(newHash, newNumber, newValidators, newCandidates, newRecents, newLastSigned);
+    }
+
+    /**
+     * Returns the highest number of the block, which more than 2/3 of candidates signed the block
+     * or its descendants up to this block. Only blocks after {@code after} are counted, and it returns
+     * {@code after} if there is no such block.
+     */
+    public long getConfirmedNumber(long after) {
+        int quorum = candidates.size() * 2 / 3 + 1;
+        long[] numbers = new long[lastSigned.length];
+        int size = 0;
+        for (long number : lastSigned) {
+            if (number > after) {
+                // insert in descending order
+                int i = size++;
+                for (; i > 0 && numbers[i - 1] < number; i--) {
+                    numbers[i] = numbers[i - 1];
+                }
+                numbers[i] = number;
+            }
+        }
+        return size < quorum ? after : numbers[quorum - 1];
     }
 
     public Hash getHash() {
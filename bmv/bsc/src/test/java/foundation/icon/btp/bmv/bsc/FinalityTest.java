@@ -0,0 +1,382 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package foundation.icon.btp.bmv.bsc;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+import foundation.icon.btp.lib.BMVStatus;
+import foundation.icon.btp.lib.BTPAddress;
+import foundation.icon.icx.KeyWallet;
+import org.junit.jupiter.api.Test;
+import score.ByteArrayObjectWriter;
+import score.Context;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static foundation.icon.btp.bmv.bsc.Header.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FinalityTest extends TestBase {
+    static final ServiceManager sm = getServiceManager();
+    static final Account BMC = sm.createAccount();
+    static final BTPAddress BMC_BTP_ADDR = BTPAddress.parse("btp://0x1.icon/cx123");
+    // private BSC network
+    static final BigInteger CHAIN_ID = BigInteger.valueOf(99L);
+    static final ChainConfig config = ChainConfig.fromChainID(CHAIN_ID);
+
+    static class Signer {
+        final KeyWallet wallet = KeyWallet.create();
+        final EthAddress address;
+
+        Signer() {
+            byte[] pubkey = wallet.getPublicKey().toByteArray();
+            if (pubkey.length == 65) {
+                pubkey = Arrays.copyOfRange(pubkey, 1, pubkey.length);
+            }
+            byte[] hash = Context.hash("keccak-256", pubkey);
+            address = new EthAddress(Arrays.copyOfRange(hash, 12, hash.length));
+        }
+    }
+
+    static List<Signer> signers(int n) {
+        List<Signer> signers = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            signers.add(new Signer());
+        }
+        signers.sort((a, b) -> a.address.compareTo(b.address));
+        return signers;
+    }
+
+    static byte[] sealHash(Header h, byte[] extra) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLP");
+        w.beginList(16);
+        w.write(CHAIN_ID);
+        w.write(h.getParentHash());
+        w.write(h.getUncleHash());
+        w.write(h.getCoinbase());
+        w.write(h.getRoot());
+        w.write(h.getTxHash());
+        w.write(h.getReceiptHash());
+        w.write(h.getBloom());
+        w.write(h.getDifficulty());
+        w.write(h.getNumber());
+        w.write(h.getGasLimit());
+        w.write(h.getGasUsed());
+        w.write(h.getTime());
+        w.write(extra);
+        w.write(h.getMixDigest());
+        w.write(h.getNonce());
+        w.end();
+        return Context.hash("keccak-256", w.toByteArray());
+    }
+
+    static Header header(Header parent, Signer signer, boolean inturn, List<Signer> candidates) {
+        return header(parent, signer, inturn, candidates, 0);
+    }
+
+    // blocks having same parent and signer are distinguished by the vanity
+    static Header header(Header parent, Signer signer, boolean inturn, List<Signer> candidates, int vanity) {
+        long number = parent.getNumber().longValue() + 1;
+        byte[] extra = new byte[EXTRA_VANITY];
+        extra[0] = (byte) vanity;
+        if (number % config.Epoch == 0) {
+            extra = Arrays.copyOf(extra, EXTRA_VANITY + VALIDATOR_NUMBER_SIZE + candidates.size() * VALIDATOR_BYTES_LENGTH);
+            extra[EXTRA_VANITY] = (byte) candidates.size();
+            for (int i = 0; i < candidates.size(); i++) {
+                System.arraycopy(candidates.get(i).address.getEthAddress(), 0, extra,
+                        EXTRA_VANITY + VALIDATOR_NUMBER_SIZE + i * VALIDATOR_BYTES_LENGTH, EthAddress.ADDRESS_LEN);
+            }
+        }
+        Header h = new Header(parent.getHash(), UNCLE_HASH, signer.address, Hash.EMPTY, Hash.EMPTY, Hash.EMPTY,
+                new byte[256], inturn ? INTURN_DIFF : NOTURN_DIFF, BigInteger.valueOf(number),
+                BigInteger.valueOf(30000000L), BigInteger.ZERO, parent.getTime() + config.Period + (inturn ? 0 : 1),
+                extra, Hash.EMPTY, new byte[8]);
+        byte[] seal = signer.wallet.sign(sealHash(h, extra));
+        byte[] sealed = Arrays.copyOf(extra, extra.length + EXTRA_SEAL);
+        System.arraycopy(seal, 0, sealed, extra.length, EXTRA_SEAL);
+        return new Header(h.getParentHash(), h.getUncleHash(), h.getCoinbase(), h.getRoot(), h.getTxHash(),
+                h.getReceiptHash(), h.getBloom(), h.getDifficulty(), h.getNumber(), h.getGasLimit(), h.getGasUsed(),
+                h.getTime(), sealed, h.getMixDigest(), h.getNonce());
+    }
+
+    // same header as the given one, which counts recoveries of its signer
+    static Header counting(Header h, int[] recovered) {
+        return new Header(h.getParentHash(), h.getUncleHash(), h.getCoinbase(), h.getRoot(), h.getTxHash(),
+                h.getReceiptHash(), h.getBloom(), h.getDifficulty(), h.getNumber(), h.getGasLimit(), h.getGasUsed(),
+                h.getTime(), h.getExtra(), h.getMixDigest(), h.getNonce()) {
+            @Override
+            EthAddress recoverSigner(BigInteger cid) {
+                recovered[0]++;
+                return super.recoverSigner(cid);
+            }
+        };
+    }
+
+    @SafeVarargs
+    static byte[] relayMessage(List<Header>... blockUpdates) {
+        List<RelayMessage.TypePrefixedMessage> tpms = new ArrayList<>();
+        for (List<Header> headers : blockUpdates) {
+            if (headers.isEmpty()) {
+                continue;
+            }
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLP");
+            w.beginList(headers.size());
+            for (Header h : headers) {
+                Header.writeObject(w, h);
+            }
+            w.end();
+            tpms.add(new RelayMessage.TypePrefixedMessage(RelayMessage.TypePrefixedMessage.BLOCK_UPDATE, w.toByteArray()));
+        }
+        return new RelayMessage(tpms).toBytes();
+    }
+
+    static byte[][] addresses(List<Signer> signers) {
+        byte[][] addresses = new byte[signers.size()][];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = signers.get(i).address.getEthAddress();
+        }
+        return addresses;
+    }
+
+    /**
+     * Returns the expected finalized height by walking from the leaf, a block is finalized if more than 2/3
+     * of candidates signed the block or its descendants, or its descendant is finalized.
+     * The confirmations are cleared on an epoch block which doesn't satisfy the condition.
+     */
+    static long finalized(List<Header> chain, Map<Long, List<Signer>> candidatesAt, long root) {
+        Map<EthAddress, Boolean> signed = new HashMap<>();
+        long top = root;
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            Header h = chain.get(i);
+            long number = h.getNumber().longValue();
+            if (number <= root) {
+                break;
+            }
+            signed.put(h.getCoinbase(), Boolean.TRUE);
+            List<Signer> candidates = candidatesAt.get((number - 1) / config.Epoch * config.Epoch);
+            int count = 0;
+            for (Signer s : candidates) {
+                if (signed.containsKey(s.address)) {
+                    count++;
+                }
+            }
+            boolean quorum = count > candidates.size() * 2 / 3;
+            if (number % config.Epoch == 0) {
+                if (!quorum) {
+                    top = root;
+                } else if (top == root) {
+                    top = number;
+                }
+            } else if (top == root && quorum) {
+                top = number;
+            }
+        }
+        return top;
+    }
+
+    // epoch block as a trusted header
+    static Header trustedHeader(long start, List<Signer> validators) {
+        Header genesis = new Header(Hash.EMPTY, UNCLE_HASH, validators.get(0).address, Hash.EMPTY, Hash.EMPTY,
+                Hash.EMPTY, new byte[256], INTURN_DIFF, BigInteger.valueOf(start - 1), BigInteger.valueOf(30000000L),
+                BigInteger.ZERO, 1700000000L, new byte[EXTRA_VANITY + EXTRA_SEAL], Hash.EMPTY, new byte[8]);
+        return header(genesis, validators.get((int) (start % validators.size())), true, validators);
+    }
+
+    static Score deploy(Header head, List<Signer> validators) throws Exception {
+        long start = head.getNumber().longValue();
+        // signers of the last blocks from the oldest one
+        byte[][] recents = new byte[validators.size() / 2 + 1][];
+        for (int i = 0; i < recents.length; i++) {
+            long number = start - recents.length + 1 + i;
+            recents[i] = validators.get((int) (number % validators.size())).address.getEthAddress();
+        }
+        return sm.deploy(sm.createAccount(), BTPMessageVerifier.class,
+                BMC.getAddress(), CHAIN_ID, head.toBytes(), recents, addresses(validators));
+    }
+
+    static void relay(Score bmv, byte[] msg) {
+        sm.call(BMC, BigInteger.ZERO, bmv.getAddress(), "handleRelayMessage",
+                BMC_BTP_ADDR.toString(), "", BigInteger.ZERO, msg);
+    }
+
+    @Test
+    void finalizeSyntheticChain() throws Exception {
+        List<Signer> validators = signers(7);
+        List<Signer> next = new ArrayList<>(validators.subList(1, validators.size()));
+        next.addAll(signers(2));
+        next.sort((a, b) -> a.address.compareTo(b.address));
+        Map<Long, List<Signer>> candidatesAt = new HashMap<>();
+
+        long start = 10 * config.Epoch;
+        Header head = trustedHeader(start, validators);
+        candidatesAt.put(start, validators);
+        Score bmv = deploy(head, validators);
+
+        // the second epoch replaces validators, and the fork on start+500 is never finalized
+        List<Header> chain = new ArrayList<>();
+        chain.add(head);
+        List<Signer> active = validators;
+        List<Header> headers = new ArrayList<>();
+        Header forked = null;
+        long root = start;
+        int size = 1;
+        for (long number = start + 1; number <= start + 1000; number++) {
+            if (number % config.Epoch == 0) {
+                candidatesAt.put(number, number == start + 2 * config.Epoch ? next : candidatesAt.get(number - config.Epoch));
+            }
+            List<Signer> candidates = candidatesAt.get(number - number % config.Epoch);
+            List<Header> fork = new ArrayList<>();
+            if (number == start + 500) {
+                forked = header(head, active.get((int) ((number + 1) % active.size())), false, candidates);
+                fork.add(forked);
+            }
+            head = header(head, active.get((int) (number % active.size())), true, candidates);
+            headers.add(head);
+            chain.add(head);
+            if (number % config.Epoch == active.size() / 2) {
+                active = candidates;
+            }
+            if (headers.size() < size && fork.isEmpty() && number < start + 1000) {
+                continue;
+            }
+
+            relay(bmv, relayMessage(headers, fork));
+            root = finalized(chain, candidatesAt, root);
+            BMVStatus status = bmv.call(BMVStatus.class, "getStatus");
+            assertEquals(root, status.getHeight());
+            headers = new ArrayList<>();
+            size = size % 7 + 1;
+        }
+        assertTrue(root > start + 1000 - next.size());
+
+        // the fork is pruned on the finalization of its sibling, so a child of it is not accepted
+        Header child = header(forked, active.get((int) ((start + 501) % active.size())), true,
+                candidatesAt.get(start));
+        AssertionError pruned = assertThrows(AssertionError.class, () -> relay(bmv, relayMessage(List.of(child))));
+        assertTrue(pruned.getMessage().contains("Inconsistent block"));
+    }
+
+    @Test
+    void acceptOldestRecentSignerAfterDeploy() throws Exception {
+        List<Signer> validators = signers(7);
+        // recents wrap around the sorted validators, so their order differs from the order of addresses
+        long start = 2 * config.Epoch;
+        Header head = trustedHeader(start, validators);
+        Score bmv = deploy(head, validators);
+
+        // signers of start-3..start are recents, and the one of start-3 may sign start+1 out of turn
+        Signer oldest = validators.get((int) ((start - validators.size() / 2) % validators.size()));
+        Signer second = validators.get((int) ((start - validators.size() / 2 + 1) % validators.size()));
+        Header recent = header(head, second, false, validators);
+        assertThrows(AssertionError.class, () -> relay(bmv, relayMessage(List.of(recent))));
+        head = header(head, oldest, false, validators);
+        relay(bmv, relayMessage(List.of(head)));
+
+        // the one of start-2 is out of the window of start+2
+        head = header(head, second, false, validators);
+        relay(bmv, relayMessage(List.of(head)));
+    }
+
+    @Test
+    void recoverSignerOncePerHeader() throws Exception {
+        List<Signer> validators = signers(7);
+        long start = 10 * config.Epoch;
+        Header head = trustedHeader(start, validators);
+        Score bmv = deploy(head, validators);
+
+        int[] recovered = {0};
+        List<Header> headers = new ArrayList<>();
+        for (long number = start + 1; number <= start + config.Epoch; number++) {
+            head = header(head, validators.get((int) (number % validators.size())), true, validators);
+            headers.add(head);
+
+            // the signer of a relayed header is checked against the coinbase and the recents
+            Header relayed = counting(head, recovered);
+            assertEquals(head.getCoinbase(), relayed.getSigner(CHAIN_ID));
+            assertEquals(head.getCoinbase(), relayed.getSigner(CHAIN_ID));
+
+            // a header loaded from the storage is given its key as the hash
+            Header loaded = counting(Header.fromBytes(head.toBytes()), recovered);
+            loaded.setHash(head.getHash());
+            assertSame(head.getHash(), loaded.getHash());
+            assertEquals(head.getCoinbase(), loaded.getSigner(CHAIN_ID));
+            assertEquals(head.getCoinbase(), loaded.getSigner(CHAIN_ID));
+        }
+        assertEquals(2 * headers.size(), recovered[0]);
+
+        relay(bmv, relayMessage(headers));
+        assertEquals(start + config.Epoch - validators.size() * 2 / 3,
+                bmv.call(BMVStatus.class, "getStatus").getHeight());
+    }
+
+    @Test
+    void pruneWideFork() throws Exception {
+        List<Signer> validators = signers(7);
+        long start = 10 * config.Epoch;
+        Header head = trustedHeader(start, validators);
+        Score bmv = deploy(head, validators);
+
+        // 20 siblings of the block on start+5, which are signed by a validator out of turn
+        List<Header> headers = new ArrayList<>();
+        List<List<Header>> forks = new ArrayList<>();
+        for (long number = start + 1; number <= start + 5; number++) {
+            if (number == start + 5) {
+                for (int i = 0; i < 20; i++) {
+                    forks.add(List.of(header(head, validators.get((int) ((number + 1) % validators.size())),
+                            false, validators, i + 1)));
+                }
+            }
+            head = header(head, validators.get((int) (number % validators.size())), true, validators);
+            headers.add(head);
+        }
+        forks.add(0, headers);
+        relay(bmv, relayMessage(forks.toArray(new List[0])));
+        assertTrue(bmv.call(BMVStatus.class, "getStatus").getHeight() < start + 5);
+
+        // finalize blocks over the fork
+        headers = new ArrayList<>();
+        for (long number = start + 6; number <= start + 15; number++) {
+            head = header(head, validators.get((int) (number % validators.size())), true, validators);
+            headers.add(head);
+        }
+        relay(bmv, relayMessage(headers));
+        assertTrue(bmv.call(BMVStatus.class, "getStatus").getHeight() > start + 5);
+
+        // removed or not, siblings are not in the tree
+        for (int i = 1; i < forks.size(); i++) {
+            Header sibling = forks.get(i).get(0);
+            Header child = header(sibling, validators.get((int) ((start + 6) % validators.size())), true, validators);
+            assertThrows(AssertionError.class, () -> relay(bmv, relayMessage(List.of(child))));
+        }
+
+        // remaining siblings are removed while finalizing following blocks
+        for (long number = start + 16; number <= start + 30; number++) {
+            head = header(head, validators.get((int) (number % validators.size())), true, validators);
+            relay(bmv, relayMessage(List.of(head)));
+            assertEquals(number - validators.size() * 2 / 3, bmv.call(BMVStatus.class, "getStatus").getHeight());
+        }
+    }
+}
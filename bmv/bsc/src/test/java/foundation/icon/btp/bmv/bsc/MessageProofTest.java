@@ -0,0 +1,203 @@
+package foundation.icon.btp.bmv.bsc;
+
+import com.iconloop.score.test.TestBase;
+import foundation.icon.btp.lib.MerklePatriciaTree;
+import foundation.icon.score.util.StringUtil;
+import org.junit.jupiter.api.Test;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageProofTest extends TestBase {
+    private static final DataSource data = DataSource.loadDataSource("privnet.json");
+
+    // relay message of the case which proves a message with block updates
+    private static byte[] relayMessage() {
+        for (DataSource.Case c : data.getCases()) {
+            for (DataSource.Case.Phase p : c.getPhases()) {
+                if (p.getMessages().size() > 0 && p.getDescription().contains("BU")) {
+                    return StringUtil.hexToBytes(p.getInput());
+                }
+            }
+        }
+        throw new IllegalStateException("no message proof in fixture");
+    }
+
+    private static List<byte[]> payloads(byte[] relayMessage, int type) {
+        List<byte[]> payloads = new ArrayList<>();
+        ObjectReader r = Context.newByteArrayObjectReader("RLP", relayMessage);
+        r.beginList();
+        r.beginList();
+        while (r.hasNext()) {
+            r.beginList();
+            int t = r.readInt();
+            byte[] payload = r.readByteArray();
+            r.end();
+            if (t == type) {
+                payloads.add(payload);
+            }
+        }
+        r.end();
+        r.end();
+        return payloads;
+    }
+
+    private static Header header(byte[] relayMessage, Hash id) {
+        for (byte[] payload : payloads(relayMessage, RelayMessage.TypePrefixedMessage.BLOCK_UPDATE)) {
+            for (Header header : BlockUpdate.fromBytes(payload).getHeaders()) {
+                if (header.getHash().equals(id)) {
+                    return header;
+                }
+            }
+        }
+        throw new IllegalStateException("no header for message proof");
+    }
+
+    static byte[] encode(Hash id, List<ReceiptProof> rps) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLP");
+        w.beginList(2);
+        w.write(id);
+        w.beginList(rps.size());
+        for (ReceiptProof rp : rps) {
+            w.beginList(2);
+            w.write(rp.getKey());
+            w.beginList(rp.getProof().length);
+            for (byte[] node : rp.getProof()) {
+                w.write(node);
+            }
+            w.end();
+            w.end();
+        }
+        w.end();
+        w.end();
+        return w.toByteArray();
+    }
+
+    static byte[] encodeCompact(Hash id, List<ReceiptProof> rps) {
+        List<byte[]> nodes = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (ReceiptProof rp : rps) {
+            for (byte[] node : rp.getProof()) {
+                String key = StringUtil.bytesToHex(node);
+                if (!indexes.containsKey(key)) {
+                    indexes.put(key, nodes.size());
+                    nodes.add(node);
+                }
+            }
+        }
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLP");
+        w.beginList(3);
+        w.write(id);
+        w.beginList(nodes.size());
+        for (byte[] node : nodes) {
+            w.write(node);
+        }
+        w.end();
+        w.beginList(rps.size());
+        for (ReceiptProof rp : rps) {
+            w.beginList(2);
+            w.write(rp.getKey());
+            w.beginList(rp.getProof().length);
+            for (byte[] node : rp.getProof()) {
+                w.write(indexes.get(StringUtil.bytesToHex(node)));
+            }
+            w.end();
+            w.end();
+        }
+        w.end();
+        w.end();
+        return w.toByteArray();
+    }
+
+    private static void assertMessageProofEquals(MessageProof expected, MessageProof actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getReceiptProofs().size(), actual.getReceiptProofs().size());
+        for (int i = 0; i < expected.getReceiptProofs().size(); i++) {
+            ReceiptProof e = expected.getReceiptProofs().get(i);
+            ReceiptProof a = actual.getReceiptProofs().get(i);
+            assertArrayEquals(e.getKey(), a.getKey());
+            assertArrayEquals(e.getProof(), a.getProof());
+        }
+    }
+
+    private static byte[][] prove(Header header, MessageProof mp) {
+        List<ReceiptProof> rps = mp.getReceiptProofs();
+        byte[][] keys = new byte[rps.size()][];
+        byte[][][] proofs = new byte[rps.size()][][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rps.get(i).getKey();
+            proofs[i] = rps.get(i).getProof();
+        }
+        return MerklePatriciaTree.proveAll(header.getReceiptHash().toBytes(), keys, proofs);
+    }
+
+    @Test
+    void decodeBothFormats() {
+        byte[] relayMessage = relayMessage();
+        byte[] payload = payloads(relayMessage, RelayMessage.TypePrefixedMessage.MESSAGE_PROOF).get(0);
+        MessageProof mp = MessageProof.fromBytes(payload);
+        assertArrayEquals(payload, encode(mp.getId(), mp.getReceiptProofs()));
+
+        byte[] compact = encodeCompact(mp.getId(), mp.getReceiptProofs());
+        assertMessageProofEquals(mp, MessageProof.fromCompactBytes(compact));
+
+        Object msg = new RelayMessage.TypePrefixedMessage(
+                RelayMessage.TypePrefixedMessage.COMPACT_MESSAGE_PROOF, compact).getMessage();
+        assertTrue(msg instanceof MessageProof);
+        assertMessageProofEquals(mp, (MessageProof) msg);
+    }
+
+    @Test
+    void compactFormatWithReceiptsOfSameBlock() {
+        byte[] relayMessage = relayMessage();
+        MessageProof mp = MessageProof.fromBytes(
+                payloads(relayMessage, RelayMessage.TypePrefixedMessage.MESSAGE_PROOF).get(0));
+        Header header = header(relayMessage, mp.getId());
+
+        List<ReceiptProof> rps = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rps.addAll(mp.getReceiptProofs());
+        }
+        byte[] full = encode(mp.getId(), rps);
+        byte[] compact = encodeCompact(mp.getId(), rps);
+        assertTrue(compact.length < full.length,
+                "compact:" + compact.length + " full:" + full.length);
+
+        MessageProof fullProof = MessageProof.fromBytes(full);
+        MessageProof compactProof = MessageProof.fromCompactBytes(compact);
+        assertMessageProofEquals(fullProof, compactProof);
+        assertArrayEquals(prove(header, fullProof), prove(header, compactProof));
+
+        // nodes are decoded once and shared by the receipt proofs
+        List<ReceiptProof> shared = compactProof.getReceiptProofs();
+        assertSame(shared.get(0).getProof()[0], shared.get(1).getProof()[0]);
+    }
+
+    @Test
+    void compactFormatWithInvalidIndex() {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLP");
+        w.beginList(3);
+        w.write(Hash.EMPTY);
+        w.beginList(1);
+        w.write(new byte[]{0x01});
+        w.end();
+        w.beginList(1);
+        w.beginList(2);
+        w.write(new byte[]{(byte) 0x80});
+        w.beginList(1);
+        w.write(1);
+        w.end();
+        w.end();
+        w.end();
+        w.end();
+        byte[] invalid = w.toByteArray();
+        assertThrows(BMVException.class, () -> MessageProof.fromCompactBytes(invalid));
+    }
+}
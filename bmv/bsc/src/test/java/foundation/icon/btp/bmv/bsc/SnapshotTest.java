@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package foundation.icon.btp.bmv.bsc;
+
+import foundation.icon.score.util.StringUtil;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static foundation.icon.btp.bmv.bsc.Header.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SnapshotTest {
+    private static final DataSource data = DataSource.loadDataSource("mainnet.json");
+
+    // blocks of the fixture are before Luban, the epoch block has validators without BLS keys
+    static List<EthAddress> candidatesOf(Header head) {
+        byte[] extra = head.getExtra();
+        List<EthAddress> candidates = new ArrayList<>();
+        for (int i = EXTRA_VANITY; i + EthAddress.ADDRESS_LEN <= extra.length - EXTRA_SEAL; i += EthAddress.ADDRESS_LEN) {
+            candidates.add(new EthAddress(Arrays.copyOfRange(extra, i, i + EthAddress.ADDRESS_LEN)));
+        }
+        return candidates;
+    }
+
+    static List<EthAddress> sorted(List<EthAddress> addresses) {
+        List<EthAddress> ret = new ArrayList<>(addresses);
+        EthAddresses.sort(ret);
+        return ret;
+    }
+
+    static EthAddress address(int i) {
+        byte[] b = new byte[EthAddress.ADDRESS_LEN];
+        b[EthAddress.ADDRESS_LEN - 1] = (byte) i;
+        return new EthAddress(b);
+    }
+
+    static Header header(Snapshot parent, EthAddress coinbase) {
+        return new Header(parent.getHash(), UNCLE_HASH, coinbase, Hash.EMPTY, Hash.EMPTY, Hash.EMPTY,
+                new byte[256], NOTURN_DIFF, parent.getNumber().add(BigInteger.ONE), BigInteger.valueOf(30000000L),
+                BigInteger.ZERO, 0L, new byte[EXTRA_VANITY + EXTRA_SEAL], Hash.EMPTY, new byte[8]);
+    }
+
+    @Test
+    void applyMainnetHeaders() {
+        DataSource.ConstructorParams params = data.getParams();
+        ChainConfig config = ChainConfig.fromChainID(params.getChainId());
+        Header head = Header.fromBytes(StringUtil.hexToBytes(params.getHeader()));
+        Snapshot snap = new Snapshot(head.getHash(), head.getNumber(),
+                new EthAddresses(sorted(params.getValidators())),
+                new EthAddresses(candidatesOf(head)),
+                new EthAddresses(params.getRecents()));
+
+        int applied = 0;
+        for (DataSource.Case c : data.getCases()) {
+            for (DataSource.Case.Phase p : c.getPhases()) {
+                RelayMessage rm = RelayMessage.fromBytes(StringUtil.hexToBytes(p.getInput()));
+                for (RelayMessage.TypePrefixedMessage tpm : rm.getMessages()) {
+                    if (!(tpm.getMessage() instanceof BlockUpdate)) {
+                        continue;
+                    }
+                    for (Header h : ((BlockUpdate) tpm.getMessage()).getHeaders()) {
+                        EthAddress signer = h.getSigner(params.getChainId());
+                        assertEquals(h.getCoinbase(), signer);
+                        assertTrue(snap.isValidator(signer));
+                        assertFalse(snap.isRecentlySigned(signer));
+                        assertEquals(INTURN_DIFF.equals(h.getDifficulty()), snap.inturn(signer));
+
+                        snap = snap.apply(config, h);
+                        assertTrue(snap.isRecentlySigned(signer));
+                        assertEquals(snap.getValidators().size() / 2 + 1, snap.getRecents().size());
+                        applied++;
+                    }
+                }
+            }
+        }
+        assertTrue(applied > snap.getValidators().size());
+    }
+
+    @Test
+    void keepRecentsInWindowOfNewValidators() {
+        ChainConfig config = ChainConfig.fromChainID(BigInteger.valueOf(99L));
+        List<EthAddress> validators = new ArrayList<>();
+        for (int i = 1; i <= 7; i++) {
+            validators.add(address(i));
+        }
+        List<EthAddress> candidates = List.of(address(1), address(2), address(3));
+        // validators are replaced by candidates on the block of (epoch + validators/2)
+        Snapshot snap = new Snapshot(Hash.EMPTY, BigInteger.valueOf(config.Epoch + 2),
+                new EthAddresses(validators), new EthAddresses(candidates),
+                new EthAddresses(List.of(address(4), address(5), address(6), address(7))));
+
+        snap = snap.apply(config, header(snap, address(1)));
+        assertEquals(3, snap.getValidators().size());
+        assertEquals(2, snap.getRecents().size());
+        assertEquals(address(7), snap.getRecents().get(0));
+        assertEquals(address(1), snap.getRecents().get(1));
+        assertTrue(snap.isRecentlySigned(address(1)));
+        assertFalse(snap.isRecentlySigned(address(2)));
+
+        snap = snap.apply(config, header(snap, address(2)));
+        assertEquals(2, snap.getRecents().size());
+        assertEquals(address(1), snap.getRecents().get(0));
+        // the oldest one is out of the window of the next block
+        assertFalse(snap.isRecentlySigned(address(1)));
+        assertTrue(snap.isRecentlySigned(address(2)));
+    }
+}
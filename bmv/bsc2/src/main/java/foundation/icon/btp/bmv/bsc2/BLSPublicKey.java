@@ -6,6 +6,7 @@ import score.ObjectReader;
 import score.ObjectWriter;
 
 import java.util.Arrays;
+import java.util.List;
 
 public class BLSPublicKey {
 
@@ -53,4 +54,15 @@ public class BLSPublicKey {
     public byte[] toBytes() {
         return this.data;
     }
+
+    /**
+     * Aggregates the keys at once with the concatenation of them.
+     */
+    public static byte[] aggregate(List<BLSPublicKey> keys) {
+        byte[] values = new byte[keys.size() * LENGTH];
+        for (int i = 0; i < keys.size(); i++) {
+            System.arraycopy(keys.get(i).data, 0, values, i * LENGTH, LENGTH);
+        }
+        return Context.aggregate("bls12-381-g1", null, values);
+    }
 }
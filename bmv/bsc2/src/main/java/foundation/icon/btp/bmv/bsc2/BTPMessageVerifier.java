@@ -38,10 +38,18 @@ import static foundation.icon.btp.bmv.bsc2.Header.*;
 
 public class BTPMessageVerifier implements BMV {
     private final VarDB<Address> bmc = Context.newVarDB("bmc", Address.class);
-    private final VarDB<BlockTree> tree = Context.newVarDB("tree", BlockTree.class);
+    private final VarDB<BlockTree.Legacy> legacyTree = Context.newVarDB("tree", BlockTree.Legacy.class);
+    private final BlockTree tree = new BlockTree("tree");
     private final VarDB<Snapshot> snap = Context.newVarDB("snap", Snapshot.class);
     private final VarDB<MerkleTreeAccumulator> mta = Context.newVarDB("mta", MerkleTreeAccumulator.class);
     private final DictDB<byte[], Header> heads = Context.newDictDB("heads", Header.class);
+    // snapshots of the blocks in the tree, the snapshot of the root is in `snap`
+    private final DictDB<byte[], Snapshot.Delta> snaps = Context.newDictDB("snaps", Snapshot.Delta.class);
+    // blocks loaded or added in the transaction, cleared by flushBlocks()
+    private final Map<Hash, Header> headCache = new HashMap<>();
+    private final Map<Hash, Snapshot.Delta> snapCache = new HashMap<>();
+    private final List<Hash> newBlocks = new ArrayList<>();
+    private Snapshot rootSnap;
 
     public BTPMessageVerifier(Address _bmc, BigInteger _chainId, @Optional byte[] _header,
                               @Optional byte[] _validators, @Optional byte[] _candidates,
@@ -65,7 +73,8 @@ public class BTPMessageVerifier implements BMV {
             }
 
             this.bmc.set(_bmc);
-            this.tree.set(new BlockTree(head.getHash()));
+            this.tree.init(head.getHash());
+            this.tree.flush();
             this.mta.set(mta);
             this.heads.set(head.getHash().toBytes(), head);
             VoteAttestation attestation = head.getVoteAttestation(config);
@@ -80,6 +89,13 @@ public class BTPMessageVerifier implements BMV {
                         attestation, _currTurnLength, _nextTurnLength, _currTurnLength, 0));
         } else {
             Context.require(_bmc.equals(this.bmc.get()), "Mismatch BMC address");
+            BlockTree.Legacy legacy = this.legacyTree.get();
+            if (legacy != null) {
+                this.tree.migrate(legacy);
+                migrateSnapshots(config);
+                this.tree.flush();
+                this.legacyTree.set(null);
+            }
         }
     }
 
@@ -91,7 +107,7 @@ public class BTPMessageVerifier implements BMV {
     @External(readonly = true)
     public BMVStatus getStatus() {
         MerkleTreeAccumulator mta = this.mta.get();
-        BlockTree tree = this.tree.get();
+        BlockTree tree = this.tree;
         Header head = this.heads.get(tree.getRoot().toBytes());
         BMVStatus status = new BMVStatus();
         status.setHeight(head.getNumber().longValue());
@@ -103,7 +119,7 @@ public class BTPMessageVerifier implements BMV {
     public byte[][] handleRelayMessage(String _bmc, String _prev, BigInteger _seq, byte[] _msg) {
         checkAccessible();
 
-        BlockTree tree = this.tree.get();
+        BlockTree tree = this.tree;
         MerkleTreeAccumulator mta = this.mta.get();
         ChainConfig config = ChainConfig.getInstance();
         List<Header> confirmations = new ArrayList<>();
@@ -125,7 +141,8 @@ public class BTPMessageVerifier implements BMV {
             }
         }
 
-        this.tree.set(tree);
+        tree.flush();
+        flushBlocks();
         this.mta.set(mta);
 
         int i = 0;
@@ -138,50 +155,39 @@ public class BTPMessageVerifier implements BMV {
     }
 
     private List<Header> handleBlockUpdate(ChainConfig config, BlockUpdate bu, BlockTree tree, MerkleTreeAccumulator mta) {
-        List<Header> newHeads = new ArrayList<>(bu.getHeaders());
+        List<Header> newHeads = bu.getHeaders();
         if (newHeads.isEmpty()) {
             return new ArrayList<>();
         }
-        List<Hash> ancestors = tree.getStem(newHeads.get(0).getParentHash());
-        Context.require(ancestors.size() > 0, "Inconsistent block");
-
-        // load heads in storage
-        Snapshot snap = this.snap.get();
-        Map<Hash, Header> heads = new HashMap<>();
-        Map<Hash, Snapshot> snaps = new HashMap<>();
-        for (Hash ancestor : ancestors) {
-            Header head = this.heads.get(ancestor.toBytes());
-            heads.put(ancestor, head);
-
-            if (snap.getNumber().longValue() + 1L == head.getNumber().longValue()) {
-                snap = snap.apply(config, head);
-            }
-            snaps.put(ancestor, snap);
-        }
+        Hash hash = newHeads.get(0).getParentHash();
+        Context.require(tree.contains(hash), "Inconsistent block");
 
-        Header parent = heads.get(newHeads.get(0).getParentHash());
+        Header parent = getHeader(hash);
+        Snapshot snap = getSnapshot(hash);
         for (Header newHead : newHeads) {
             verify(config, newHead, parent, snap);
             if (newHead.getVoteAttestation(config) != null) {
                 verifyVoteAttestation(config, newHead, snap);
             }
             tree.add(snap.getHash(), newHead.getHash());
-            snap = snap.apply(config, newHead);
-            snaps.put(snap.getHash(), snap);
-            heads.put(snap.getHash(), newHead);
+            Snapshot newSnap = snap.apply(config, newHead);
+            putBlock(newHead, newSnap, snap);
+            snap = newSnap;
             parent = newHead;
         }
 
-        // current `parent` refer to leaf header
-        Hash finality = getFinalizedBlockHash(heads, snaps, heads.get(tree.getRoot()), parent);
+        // current `snap` refer to leaf snapshot
+        Hash finality = getFinalizedBlockHash(tree, snap);
         if (finality == null) {
             return new ArrayList<>();
         }
 
-        this.snap.set(snaps.get(finality));
+        Snapshot newRootSnap = getSnapshot(finality);
+        this.snap.set(newRootSnap);
+        this.rootSnap = newRootSnap;
 
         // ascending ordered finalized heads
-        List<Header> finalities = collect(heads, tree.getRoot(), finality);
+        List<Header> finalities = collect(tree.getRoot(), finality);
         for (Header head : finalities) {
             mta.add(head.getHash().toBytes());
         }
@@ -189,26 +195,109 @@ public class BTPMessageVerifier implements BMV {
         tree.prune(finality, new BlockTree.OnRemoveListener() {
             @Override
             public void onRemove(Hash node) {
-                if (ancestors.contains(node)) {
-                    // remove finalized heads on storage
-                    BTPMessageVerifier.this.heads.set(node.toBytes(), null);
-                } else {
-                    // remove finalized heads on memory
-                    for (int i = newHeads.size()-1; i >= 0; i--) {
-                        if (newHeads.get(i).getHash().equals(node)) {
-                            newHeads.remove(i);
-                            break;
-                        }
-                    }
-                }
+                removeBlock(node);
             }
         });
+        return finalities;
+    }
 
-        // store not finalized heads
-        for (Header newHead : newHeads) {
-            this.heads.set(newHead.getHash().toBytes(), newHead);
+    private Header getHeader(Hash hash) {
+        Header head = headCache.get(hash);
+        if (head == null) {
+            head = this.heads.get(hash.toBytes());
+            Context.require(head != null, "No header");
+            head.setHash(hash);
+            headCache.put(hash, head);
         }
-        return finalities;
+        return head;
+    }
+
+    private Snapshot.Delta getSnapshotDelta(Hash hash) {
+        Snapshot.Delta delta = snapCache.get(hash);
+        if (delta == null) {
+            delta = this.snaps.get(hash.toBytes());
+            if (delta != null) {
+                snapCache.put(hash, delta);
+            }
+        }
+        return delta;
+    }
+
+    private Snapshot getRootSnapshot() {
+        if (rootSnap == null) {
+            rootSnap = this.snap.get();
+        }
+        return rootSnap;
+    }
+
+    /**
+     * Returns the snapshot of the block in the tree. Validator sets are taken from the root
+     * if the block having them is pruned, because they are not changed since the block.
+     */
+    private Snapshot getSnapshot(Hash hash) {
+        Snapshot root = getRootSnapshot();
+        if (root.getHash().equals(hash)) {
+            return root;
+        }
+        Snapshot.Delta delta = getSnapshotDelta(hash);
+        Context.require(delta != null, "No snapshot");
+        if (delta.hasValidatorSets()) {
+            return delta.toSnapshot(null);
+        }
+        Snapshot.Delta sets = getSnapshotDelta(delta.getSetsAt());
+        return delta.toSnapshot(sets != null && sets.hasValidatorSets() ? sets.toSnapshot(null) : root);
+    }
+
+    private Hash getValidatorSetsAt(Hash hash) {
+        Snapshot.Delta delta = getSnapshotDelta(hash);
+        return delta != null ? delta.getSetsAt() : hash;
+    }
+
+    private void putBlock(Header head, Snapshot snap, Snapshot parent) {
+        Hash hash = head.getHash();
+        headCache.put(hash, head);
+        snapCache.put(hash, Snapshot.Delta.of(snap, parent, getValidatorSetsAt(parent.getHash())));
+        newBlocks.add(hash);
+    }
+
+    private void removeBlock(Hash hash) {
+        headCache.remove(hash);
+        snapCache.remove(hash);
+        if (!newBlocks.remove(hash)) {
+            this.heads.set(hash.toBytes(), null);
+            this.snaps.set(hash.toBytes(), null);
+        }
+    }
+
+    private void flushBlocks() {
+        for (Hash hash : newBlocks) {
+            this.heads.set(hash.toBytes(), headCache.get(hash));
+            this.snaps.set(hash.toBytes(), snapCache.get(hash));
+        }
+        newBlocks.clear();
+        headCache.clear();
+        snapCache.clear();
+        rootSnap = null;
+    }
+
+    /**
+     * Stores snapshots of the blocks in the tree, which are not stored by previous versions.
+     */
+    private void migrateSnapshots(ChainConfig config) {
+        List<Hash> ids = new ArrayList<>();
+        ids.add(tree.getRoot());
+        for (int i = 0; i < ids.size(); i++) {
+            Hash id = ids.get(i);
+            Snapshot snap = getSnapshot(id);
+            for (Hash child : tree.getChildren(id)) {
+                Snapshot newSnap = snap.apply(config, getHeader(child));
+                Snapshot.Delta delta = Snapshot.Delta.of(newSnap, snap, getValidatorSetsAt(id));
+                snapCache.put(child, delta);
+                this.snaps.set(child.toBytes(), delta);
+                ids.add(child);
+            }
+        }
+        flushBlocks();
     }
 
     private Header handleBlockProof(BlockProof bp, MerkleTreeAccumulator mta) {
@@ -246,17 +335,22 @@ public class BTPMessageVerifier implements BMV {
         }
 
         Context.require(head != null, "No confirmed header for message proof");
-        for (ReceiptProof rp : mp.getReceiptProofs()) {
-            Receipt receipt;
-            byte[] receiptBytes;
-            try {
-                receiptBytes = MerklePatriciaTree.prove(
-                        head.getReceiptHash().toBytes(), rp.getKey(), rp.getProof());
-            } catch (MerklePatriciaTree.MPTException e) {
-                throw BMVException.unknown(e.getMessage());
-            }
+        List<ReceiptProof> rps = mp.getReceiptProofs();
+        byte[][] keys = new byte[rps.size()][];
+        byte[][][] proofs = new byte[rps.size()][][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rps.get(i).getKey();
+            proofs[i] = rps.get(i).getProof();
+        }
+        byte[][] receiptsBytes;
+        try {
+            receiptsBytes = MerklePatriciaTree.proveAll(head.getReceiptHash().toBytes(), keys, proofs);
+        } catch (MerklePatriciaTree.MPTException e) {
+            throw BMVException.unknown(e.getMessage());
+        }
 
-            receipt = Receipt.fromBytes(receiptBytes);
+        for (byte[] receiptBytes : receiptsBytes) {
+            Receipt receipt = Receipt.fromBytes(receiptBytes);
             Context.require(receipt.getStatus() != Receipt.StatusFailed, "Failed receipt");
             for (EventLog log : receipt.getLogs()) {
                 if (!log.getAddress().equals(prev)) {
@@ -357,17 +451,16 @@ public class BTPMessageVerifier implements BMV {
         atte.verify(snap.getVoters());
     }
 
-    private Hash getFinalizedBlockHash(Map<Hash, Header> heads, Map<Hash, Snapshot> snaps, Header root, Header from) {
-        Snapshot snap = snaps.get(from.getHash());
-        Header head = heads.get(from.getHash());
-        while (snap != null && !snap.getHash().equals(root.getHash())) {
+    private Hash getFinalizedBlockHash(BlockTree tree, Snapshot from) {
+        Hash root = tree.getRoot();
+        Snapshot snap = from;
+        while (!snap.getHash().equals(root)) {
             VoteRange range = snap.getVoteAttestation().getVoteRange();
             if (range.getTargetNumber().compareTo(range.getSourceNumber().add(BigInteger.ONE)) == 0) {
-                Context.require(snaps.get(range.getSourceHash()) != null, "Unknown justified block hash");
+                Context.require(tree.contains(range.getSourceHash()), "Unknown justified block hash");
                 return range.getSourceHash();
             }
-            snap = snaps.get(head.getParentHash());
-            head = heads.get(head.getParentHash());
+            snap = getSnapshot(tree.getParent(snap.getHash()));
         }
         return null;
     }
@@ -398,13 +491,12 @@ public class BTPMessageVerifier implements BMV {
         }
     }
 
-    private static List<Header> collect(Map<Hash, Header> heads, Hash from, Hash to) {
+    private List<Header> collect(Hash from, Hash to) {
         List<Header> cols = new ArrayList<>();
-        Header head = heads.get(to);
+        Header head = getHeader(to);
         while (!head.getHash().equals(from)) {
             cols.add(head);
-            head = heads.get(head.getParentHash());
-            Context.require(head != null, "Inconsistent chain");
+            head = getHeader(head.getParentHash());
         }
         reverse(cols);
         return cols;
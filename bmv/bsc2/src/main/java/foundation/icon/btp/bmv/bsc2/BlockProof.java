@@ -15,12 +15,11 @@
  */
 package foundation.icon.btp.bmv.bsc2;
 
+import foundation.icon.score.util.Codec;
 import score.Context;
 import score.ObjectReader;
-import scorex.util.ArrayList;
 
 import java.math.BigInteger;
-import java.util.List;
 
 public class BlockProof {
     private final Header header;
@@ -37,18 +36,8 @@ public class BlockProof {
         r.beginList();
         Header header = r.read(Header.class);
         BigInteger height = r.readBigInteger();
-        r.beginList();
-        List<byte[]> w = new ArrayList<>();
-        while (r.hasNext()) {
-            w.add(r.readByteArray());
-        }
-        r.end();
+        byte[][] witness = Codec.readByteArrays(r);
         r.end();
-
-        byte[][] witness = new byte[w.size()][];
-        for (int i = 0; i < w.size(); i++) {
-            witness[i] = w.get(i);
-        }
         return new BlockProof(header, height, witness);
     }
 
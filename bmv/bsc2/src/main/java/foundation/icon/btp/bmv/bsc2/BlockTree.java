@@ -15,9 +15,12 @@
  */
 package foundation.icon.btp.bmv.bsc2;
 
+import score.ArrayDB;
 import score.Context;
+import score.DictDB;
 import score.ObjectReader;
 import score.ObjectWriter;
+import score.VarDB;
 import scorex.util.ArrayList;
 import scorex.util.HashMap;
 
@@ -25,167 +28,376 @@ import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
+/**
+ * Tree of the blocks which are not finalized yet.
+ * Each node keeps its parent, depth and children on its own entry, so that adding a block
+ * writes only the block and its parent. Changes are kept in memory until {@link #flush()}.
+ */
 public class BlockTree {
-
+    // max number of nodes out of the finalized chain, which are removed in a prune
+    public static final int PRUNE_LIMIT = 16;
+    private final VarDB<Hash> rootDB;
+    private final DictDB<byte[], Node> nodeDB;
+    // stack of nodes to be removed with their descendants
+    private final ArrayDB<Hash> pruneDB;
     private Hash root;
-    private final Map<Hash, List<Hash>> nodes;
+    private boolean rootChanged;
+    // nodes loaded or changed in the transaction
+    private final Map<Hash, Node> nodes = new HashMap<>();
+    // changed nodes => whether it's in the storage
+    private final Map<Hash, Boolean> changed = new HashMap<>();
+    private List<Hash> prunes;
+    // size of the bottom of the stack which is not changed in the transaction
+    private int prunesKept;
 
-    public BlockTree(Hash root) {
-        this.root = root;
-        this.nodes = new HashMap<>();
-        this.nodes.put(root, new ArrayList<>());
+    public BlockTree(String id) {
+        this.rootDB = Context.newVarDB(id + "Root", Hash.class);
+        this.nodeDB = Context.newDictDB(id + "Nodes", Node.class);
+        this.pruneDB = Context.newArrayDB(id + "Prunes", Hash.class);
     }
 
-    private BlockTree(Hash root, Map<Hash, List<Hash>> nodes) {
-        this.root = root;
-        this.nodes = nodes;
-    }
+    public static class Node {
+        private final Hash parent;
+        private final long depth;
+        private final List<Hash> children;
 
-    private static class Item {
-        private final int nleaves;
-        private final Hash id;
+        public Node(Hash parent, long depth, List<Hash> children) {
+            this.parent = parent;
+            this.depth = depth;
+            this.children = children;
+        }
 
-        private Item(int nleaves, Hash id) {
-            this.nleaves = nleaves;
-            this.id = id;
+        public Hash getParent() {
+            return parent;
         }
-    }
 
-    public static BlockTree readObject(ObjectReader r) {
-        Map<Hash, List<Hash>> nodes = new HashMap<>();
+        public long getDepth() {
+            return depth;
+        }
+
+        public List<Hash> getChildren() {
+            return children;
+        }
 
-        r.beginList();
-        int nleaves = r.readInt();
-        Hash root = Hash.of(r.readByteArray());
-        List<Item> items = new ArrayList<>();
-        items.add(new Item(nleaves, root));
+        public static void writeObject(ObjectWriter w, Node o) {
+            w.beginList(3);
+            w.writeNullable(o.parent);
+            w.write(o.depth);
+            w.beginList(o.children.size());
+            for (Hash child : o.children) {
+                w.write(child);
+            }
+            w.end();
+            w.end();
+        }
 
-        while(!items.isEmpty()) {
-            Item item = items.remove(0);
-            Hash id = item.id;
+        public static Node readObject(ObjectReader r) {
+            r.beginList();
+            Hash parent = r.readNullable(Hash.class);
+            long depth = r.readLong();
             List<Hash> children = new ArrayList<>();
-            for (int i = 0; i < item.nleaves; i++) {
-                Item c = new Item(r.readInt(), Hash.of(r.readByteArray()));
-                children.add(c.id);
-                items.add(c);
+            r.beginList();
+            while (r.hasNext()) {
+                children.add(r.read(Hash.class));
             }
-            nodes.put(id, children);
+            r.end();
+            r.end();
+            return new Node(parent, depth, children);
         }
-        r.end();
-        return new BlockTree(root, nodes);
     }
 
-    public static void writeObject(ObjectWriter w, BlockTree o) {
-        List<Hash> children = new ArrayList<>();
-        children.add(o.root);
-        w.beginList(o.nodes.size());
-        while (!children.isEmpty()) {
-            Hash node = children.remove(0);
-            List<Hash> tmp = o.nodes.get(node);
-            w.write(tmp.size());
-            w.write(node);
-            if (!tmp.isEmpty()) {
-                children.addAll(tmp);
+    /**
+     * Tree of previous versions, which is stored as a whole.
+     */
+    public static class Legacy {
+        private final Hash root;
+        private final Map<Hash, List<Hash>> nodes;
+
+        private Legacy(Hash root, Map<Hash, List<Hash>> nodes) {
+            this.root = root;
+            this.nodes = nodes;
+        }
+
+        public static Legacy readObject(ObjectReader r) {
+            Map<Hash, List<Hash>> nodes = new HashMap<>();
+            List<Hash> ids = new ArrayList<>();
+            List<Integer> nleaves = new ArrayList<>();
+
+            r.beginList();
+            nleaves.add(r.readInt());
+            ids.add(Hash.of(r.readByteArray()));
+            for (int i = 0; i < ids.size(); i++) {
+                List<Hash> children = new ArrayList<>();
+                for (int j = 0; j < nleaves.get(i); j++) {
+                    nleaves.add(r.readInt());
+                    Hash child = Hash.of(r.readByteArray());
+                    children.add(child);
+                    ids.add(child);
+                }
+                nodes.put(ids.get(i), children);
             }
+            r.end();
+            return new Legacy(ids.get(0), nodes);
+        }
+    }
+
+    /**
+     * Writes the tree in breadth first order, [nleaves, id] of each node.
+     */
+    public static void writeObject(ObjectWriter w, BlockTree o) {
+        List<Hash> ids = new ArrayList<>();
+        ids.add(o.getRoot());
+        for (int i = 0; i < ids.size(); i++) {
+            ids.addAll(o.getNode(ids.get(i)).children);
+        }
+
+        w.beginList(ids.size());
+        for (Hash id : ids) {
+            w.write(o.getNode(id).children.size());
+            w.write(id);
         }
         w.end();
     }
 
-    public static BlockTree fromBytes(byte[] bytes) {
-        ObjectReader r = Context.newByteArrayObjectReader("RLP", bytes);
-        return BlockTree.readObject(r);
+    /**
+     * Resets the tree to the root, nodes of the previous tree are removed.
+     */
+    public void init(Hash root) {
+        if (getRoot() != null) {
+            prune(null, null);
+        }
+        setRoot(root);
+        putNode(root, new Node(null, 0, new ArrayList<>()));
+    }
+
+    public void migrate(Legacy legacy) {
+        init(legacy.root);
+        List<Hash> ids = new ArrayList<>();
+        ids.add(legacy.root);
+        for (int i = 0; i < ids.size(); i++) {
+            Hash id = ids.get(i);
+            for (Hash child : legacy.nodes.get(id)) {
+                add(id, child);
+                ids.add(child);
+            }
+        }
+    }
+
+    /**
+     * Writes changed nodes to the storage and clears nodes in memory.
+     */
+    public void flush() {
+        for (Map.Entry<Hash, Boolean> entry : changed.entrySet()) {
+            Node node = nodes.get(entry.getKey());
+            if (node != null || entry.getValue()) {
+                nodeDB.set(entry.getKey().toBytes(), node);
+            }
+        }
+        if (rootChanged) {
+            rootDB.set(root);
+        }
+        if (prunes != null) {
+            for (int i = pruneDB.size(); i > prunesKept; i--) {
+                pruneDB.removeLast();
+            }
+            for (int i = prunesKept; i < prunes.size(); i++) {
+                pruneDB.add(prunes.get(i));
+            }
+        }
+        nodes.clear();
+        changed.clear();
+        root = null;
+        rootChanged = false;
+        prunes = null;
+    }
+
+    private List<Hash> getPrunes() {
+        if (prunes == null) {
+            prunes = new ArrayList<>();
+            int size = pruneDB.size();
+            for (int i = 0; i < size; i++) {
+                prunes.add(pruneDB.get(i));
+            }
+            prunesKept = size;
+        }
+        return prunes;
+    }
+
+    // checks the stack without loading its items
+    private boolean hasPrunes() {
+        if (prunes == null) {
+            if (pruneDB.size() > 0) {
+                return true;
+            }
+            prunes = new ArrayList<>();
+            prunesKept = 0;
+        }
+        return !prunes.isEmpty();
+    }
+
+    private Node getNode(Hash id) {
+        Node node = nodes.get(id);
+        if (node == null && !changed.containsKey(id)) {
+            node = nodeDB.get(id.toBytes());
+            if (node != null) {
+                nodes.put(id, node);
+            }
+        }
+        return node;
+    }
+
+    private void putNode(Hash id, Node node) {
+        if (!changed.containsKey(id)) {
+            // new node is not in the storage, it's not loaded by getNode()
+            changed.put(id, nodes.containsKey(id));
+        }
+        if (node != null) {
+            nodes.put(id, node);
+        } else {
+            nodes.remove(id);
+        }
     }
 
     public Hash getRoot() {
+        if (root == null && !rootChanged) {
+            root = rootDB.get();
+        }
         return root;
     }
 
+    private void setRoot(Hash root) {
+        this.root = root;
+        this.rootChanged = true;
+    }
+
+    public boolean contains(Hash id) {
+        Node node = getNode(id);
+        if (node == null || !hasPrunes()) {
+            return node != null;
+        }
+
+        // nodes to be removed are left in the storage, check whether it's a descendant of the root
+        Hash root = getRoot();
+        long depth = getNode(root).depth;
+        while (node != null && node.depth > depth) {
+            id = node.parent;
+            node = getNode(id);
+        }
+        return node != null && id.equals(root);
+    }
+
+    /**
+     * Returns the parent of the node, or null if the node doesn't exist.
+     * The parent of the root may be a pruned node.
+     */
+    public Hash getParent(Hash id) {
+        Node node = getNode(id);
+        return node != null ? node.parent : null;
+    }
+
+    public List<Hash> getChildren(Hash id) {
+        Node node = getNode(id);
+        Context.require(node != null, "no such node");
+        return new ArrayList<>(node.children);
+    }
+
+    /**
+     * Returns ids from the root to the node, or empty list if the node doesn't exist.
+     */
     public List<Hash> getStem(Hash id) {
         List<Hash> ret = new ArrayList<>();
-        if (!this.nodes.containsKey(id)) {
+        Node node = getNode(id);
+        if (node == null) {
             return ret;
         }
 
-        Hash target = id;
-        while (!target.equals(this.root)) {
-            for (Hash key : this.nodes.keySet()) {
-                List<Hash> children = this.nodes.get(key);
-                if (children.contains(target)) {
-                    ret.add(target);
-                    target = key;
-                    break;
-                }
-            }
+        int size = (int) (node.depth - getNode(getRoot()).depth) + 1;
+        Hash[] stem = new Hash[size];
+        for (int i = size - 1; i > 0; i--) {
+            stem[i] = id;
+            id = node.parent;
+            node = getNode(id);
         }
-        ret.add(this.root);
-
-        // sorted by root to leaf
-        for (int i = 0; i < ret.size()/2; i++) {
-            Hash tmp = ret.get(i);
-            ret.set(i, ret.get(ret.size()-1-i));
-            ret.set(ret.size()-1-i, tmp);
+        stem[0] = id;
+        for (Hash hash : stem) {
+            ret.add(hash);
         }
         return ret;
     }
 
     public void add(Hash parent, Hash node) {
-        Context.require(!this.nodes.containsKey(node), "already exist node");
-        Context.require(this.nodes.containsKey(parent), "no such parent node");
-        List<Hash> descendants = this.nodes.get(parent);
-        descendants.add(node);
-        this.nodes.put(node, new ArrayList<>());
+        Node parentNode = getNode(parent);
+        Context.require(parentNode != null, "no such parent node");
+        // the node can exist only as a child of its parent
+        Context.require(!parentNode.children.contains(node) && !node.equals(getRoot()), "already exist node");
+        parentNode.children.add(node);
+        putNode(parent, parentNode);
+        putNode(node, new Node(parent, parentNode.depth + 1, new ArrayList<>()));
     }
 
     public void add(Header head) {
-        if (nodes.containsKey(head.getHash())) {
+        if (contains(head.getHash())) {
             return;
         }
 
-        if (!nodes.containsKey(head.getParentHash())) {
+        if (!contains(head.getParentHash())) {
             throw new NoSuchElementException("No such parent node");
         }
-
-        List<Hash> descendants = nodes.get(head.getParentHash());
-        descendants.add(head.getHash());
-        nodes.put(head.getHash(), new ArrayList<>());
+        add(head.getParentHash(), head.getHash());
     }
 
     public interface OnRemoveListener {
         void onRemove(Hash node);
     }
 
+    /**
+     * Removes all nodes except the subtree of {@code until}, which becomes the new root.
+     * Nodes from the root to the parent of {@code until} are removed at once, but other nodes are removed
+     * up to {@link #PRUNE_LIMIT}, and the remaining nodes are removed by following prunes.
+     */
     public void prune(Hash until, OnRemoveListener lst) {
-        if (until.equals(root)) {
-            return;
-        }
-
+        Hash root = getRoot();
+        List<Hash> prunes = getPrunes();
         List<Hash> removals = new ArrayList<>();
-        removals.add(root);
-        while (!removals.isEmpty()) {
-            List<Hash> buf = new ArrayList<>();
-            for (Hash removal : removals) {
-                List<Hash> leaves = nodes.get(removal);
-                for (Hash leaf : leaves) {
-                    if (!leaf.equals(until)) {
-                        buf.add(leaf);
+        if (until == null) {
+            prunes.add(root);
+        } else if (!root.equals(until)) {
+            Hash id = until;
+            do {
+                Hash parent = getNode(id).parent;
+                for (Hash child : getNode(parent).children) {
+                    if (!child.equals(id)) {
+                        prunes.add(child);
                     }
                 }
-                nodes.remove(removal);
-                if (lst != null) {
-                    lst.onRemove(removal);
-                }
+                removals.add(0, parent);
+                id = parent;
+            } while (!id.equals(root));
+        }
+
+        for (int i = 0; i < PRUNE_LIMIT && !prunes.isEmpty(); i++) {
+            Hash removal = prunes.remove(prunes.size() - 1);
+            prunesKept = Math.min(prunesKept, prunes.size());
+            prunes.addAll(getNode(removal).children);
+            removals.add(removal);
+        }
+
+        for (Hash removal : removals) {
+            putNode(removal, null);
+            if (lst != null) {
+                lst.onRemove(removal);
             }
-            removals = buf;
         }
-        root = until;
+        if (!root.equals(until)) {
+            setRoot(until);
+        }
     }
 
     @Override
     public String toString() {
         return "BlockTree{" +
-                "root=" + root +
+                "root=" + getRoot() +
                 ", nodes=" + nodes +
                 '}';
     }
-
 }
@@ -15,6 +15,7 @@
  */
 package foundation.icon.btp.bmv.bsc2;
 
+import foundation.icon.score.util.ArrayUtil;
 import foundation.icon.score.util.StringUtil;
 import score.ObjectReader;
 import score.ObjectWriter;
@@ -70,7 +71,7 @@ public class EthAddress implements Comparable<EthAddress> {
 
     @Override
     public int compareTo(EthAddress o) {
-        return StringUtil.bytesToHex(data).compareTo(StringUtil.bytesToHex(o.data));
+        return ArrayUtil.compare(data, o.data);
     }
 
     @Override
@@ -67,6 +67,7 @@ public class Header {
 
     // caches
     private Hash hashCache;
+    private EthAddress signerCache;
     private Validators valsCache;
     private VoteAttestation atteCache;
 
@@ -198,6 +199,11 @@ public class Header {
         return hashCache;
     }
 
+    // headers are stored with their hashes as keys, so it's given without hashing again on loading
+    void setHash(Hash hash) {
+        this.hashCache = hash;
+    }
+
     public Validators getValidators(ChainConfig config) {
         Context.require(config.isEpoch(number), "not epoch block");
         if (valsCache == null) {
@@ -271,7 +277,18 @@ public class Header {
         return extra[pos];
     }
 
+    /**
+     * Returns the signer recovered from the seal. It's recovered once and kept on the header,
+     * so the chain id and the config of later calls are ignored.
+     */
     public EthAddress getSigner(ChainConfig config, BigInteger cid) {
+        if (signerCache == null) {
+            signerCache = recoverSigner(config, cid);
+        }
+        return signerCache;
+    }
+
+    EthAddress recoverSigner(ChainConfig config, BigInteger cid) {
         Context.require(extra.length >= EXTRA_SEAL, "Invalid seal bytes");
         byte[] signature = Arrays.copyOfRange(extra, extra.length - EXTRA_SEAL, extra.length);
         byte[] pubkey = Context.recoverKey("ecdsa-secp256k1", getSealHash(config, cid), signature, false);
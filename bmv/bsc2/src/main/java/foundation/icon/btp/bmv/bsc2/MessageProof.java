@@ -15,6 +15,7 @@
  */
 package foundation.icon.btp.bmv.bsc2;
 
+import foundation.icon.score.util.Codec;
 import score.Context;
 import score.ObjectReader;
 import scorex.util.ArrayList;
@@ -52,6 +53,33 @@ public class MessageProof {
         return MessageProof.readObject(r);
     }
 
+    /**
+     * Reads the compact form, [id, [node...], [[key, [index of node...]]...]],
+     * which carries the proof nodes shared by the receipt proofs only once.
+     */
+    public static MessageProof readCompactObject(ObjectReader r) {
+        Hash id;
+        byte[][] nodes;
+        // receipt proofs are kept as a List like readObject, so they are not copied into an array
+        List<ReceiptProof> proofs = new ArrayList<>();
+
+        r.beginList();
+        id = r.read(Hash.class);
+        nodes = Codec.readByteArrays(r);
+        r.beginList();
+        while (r.hasNext()) {
+            proofs.add(ReceiptProof.readCompactObject(r, nodes));
+        }
+        r.end();
+        r.end();
+        return new MessageProof(id, proofs);
+    }
+
+    public static MessageProof fromCompactBytes(byte[] bytes) {
+        ObjectReader r = Context.newByteArrayObjectReader("RLP", bytes);
+        return MessageProof.readCompactObject(r);
+    }
+
     public Hash getId() {
         return this.id;
     }
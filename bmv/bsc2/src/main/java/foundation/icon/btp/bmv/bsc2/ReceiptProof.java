@@ -15,11 +15,9 @@
  */
 package foundation.icon.btp.bmv.bsc2;
 
+import foundation.icon.score.util.Codec;
 import score.Context;
 import score.ObjectReader;
-import scorex.util.ArrayList;
-
-import java.util.List;
 
 public class ReceiptProof {
     private final byte[] key; // transaction index encoded with rlp
@@ -33,19 +31,24 @@ public class ReceiptProof {
     public static ReceiptProof readObject(ObjectReader r) {
         r.beginList();
         byte[] key = r.readByteArray();
-        r.beginList();
-        List<byte[]> proof = new ArrayList<>();
-        while (r.hasNext()) {
-            proof.add(r.readByteArray());
-        }
+        byte[][] proof = Codec.readByteArrays(r);
         r.end();
+        return new ReceiptProof(key, proof);
+    }
+
+    public static ReceiptProof readCompactObject(ObjectReader r, byte[][] nodes) {
+        r.beginList();
+        byte[] key = r.readByteArray();
+        int[] indexes = Codec.readInts(r);
         r.end();
-        int i = 0;
-        byte[][] _proof = new byte[proof.size()][];
-        for (byte[] part : proof) {
-            _proof[i++] = part;
+        byte[][] proof = new byte[indexes.length][];
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < 0 || indexes[i] >= nodes.length) {
+                throw BMVException.unknown("invalid proof node index");
+            }
+            proof[i] = nodes[indexes[i]];
         }
-        return new ReceiptProof(key, _proof);
+        return new ReceiptProof(key, proof);
     }
 
     public static ReceiptProof fromBytes(byte[] bytes) {
@@ -64,11 +64,14 @@ public class Snapshot {
         w.write(o.candidates);
         w.write(o.voters);
         w.write(o.recents);
-        w.write(o.attestation);
+        // the attestation is written as a record at the end, and the slot of previous versions is left null
+        // to tell the format on reading. It's not readable by previous versions.
+        w.writeNullable((VoteAttestation) null);
         w.write(o.currTurnLength);
         w.write(o.nextTurnLength);
         w.write(o.pastTurnLength);
         w.write(o.updateFlags);
+        VoteAttestation.writeRecord(w, o.attestation);
         w.end();
     }
 
@@ -80,16 +83,102 @@ public class Snapshot {
         Validators candidates = r.read(Validators.class);
         Validators voters = r.read(Validators.class);
         EthAddresses recents = r.read(EthAddresses.class);
-        VoteAttestation attestation = r.read(VoteAttestation.class);
+        VoteAttestation attestation = r.readNullable(VoteAttestation.class);
         int currTurnLength = r.readOrDefault(Integer.class, Header.DEFAULT_TURN_LENGTH);
         int nextTurnLength = r.readOrDefault(Integer.class, Header.DEFAULT_TURN_LENGTH);
         int pastTurnLength = r.readOrDefault(Integer.class, currTurnLength);
         int updateFlags = r.readOrDefault(Integer.class, 0);
+        if (attestation == null) {
+            attestation = VoteAttestation.readRecord(r);
+        }
         r.end();
         return new Snapshot(hash, number, validators, candidates, voters, recents, attestation,
                 currTurnLength, nextTurnLength, pastTurnLength, updateFlags);
     }
 
+    /**
+     * Snapshot of a block in the tree, which keeps validator sets only on the block changing them.
+     * Other blocks refer to the block having their validator sets by {@code setsAt}.
+     */
+    public static class Delta {
+        private final Hash setsAt;
+        private final Snapshot snapshot;
+
+        private Delta(Hash setsAt, Snapshot snapshot) {
+            this.setsAt = setsAt;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Returns the delta of the snapshot applied to the parent, {@code parentSetsAt} is the block
+         * having validator sets of the parent.
+         */
+        public static Delta of(Snapshot snapshot, Snapshot parent, Hash parentSetsAt) {
+            boolean sameSets = snapshot.validators == parent.validators
+                    && snapshot.candidates == parent.candidates
+                    && snapshot.voters == parent.voters;
+            return new Delta(sameSets ? parentSetsAt : snapshot.hash, snapshot);
+        }
+
+        public Hash getSetsAt() {
+            return setsAt;
+        }
+
+        public boolean hasValidatorSets() {
+            return setsAt.equals(snapshot.hash);
+        }
+
+        /**
+         * Returns the snapshot with validator sets of {@code sets} if it doesn't have them.
+         */
+        public Snapshot toSnapshot(Snapshot sets) {
+            if (hasValidatorSets()) {
+                return snapshot;
+            }
+            Snapshot o = snapshot;
+            return new Snapshot(o.hash, o.number, sets.validators, sets.candidates, sets.voters, o.recents,
+                    o.attestation, o.currTurnLength, o.nextTurnLength, o.pastTurnLength, o.updateFlags);
+        }
+
+        public static void writeObject(ObjectWriter w, Delta o) {
+            Snapshot s = o.snapshot;
+            boolean hasSets = o.hasValidatorSets();
+            w.beginList(12);
+            w.write(o.setsAt);
+            w.write(s.hash);
+            w.write(s.number);
+            w.writeNullable(hasSets ? s.validators : null);
+            w.writeNullable(hasSets ? s.candidates : null);
+            w.writeNullable(hasSets ? s.voters : null);
+            w.write(s.recents);
+            VoteAttestation.writeRecord(w, s.attestation);
+            w.write(s.currTurnLength);
+            w.write(s.nextTurnLength);
+            w.write(s.pastTurnLength);
+            w.write(s.updateFlags);
+            w.end();
+        }
+
+        public static Delta readObject(ObjectReader r) {
+            r.beginList();
+            Hash setsAt = r.read(Hash.class);
+            Hash hash = r.read(Hash.class);
+            BigInteger number = r.readBigInteger();
+            Validators validators = r.readNullable(Validators.class);
+            Validators candidates = r.readNullable(Validators.class);
+            Validators voters = r.readNullable(Validators.class);
+            EthAddresses recents = r.read(EthAddresses.class);
+            VoteAttestation attestation = VoteAttestation.readRecord(r);
+            int currTurnLength = r.readInt();
+            int nextTurnLength = r.readInt();
+            int pastTurnLength = r.readInt();
+            int updateFlags = r.readInt();
+            r.end();
+            return new Delta(setsAt, new Snapshot(hash, number, validators, candidates, voters, recents,
+                    attestation, currTurnLength, nextTurnLength, pastTurnLength, updateFlags));
+        }
+    }
+
     public boolean inturn(EthAddress validator) {
         BigInteger offset = number.add(BigInteger.ONE).divide(BigInteger.valueOf(currTurnLength))
             .mod(BigInteger.valueOf(validators.size()));
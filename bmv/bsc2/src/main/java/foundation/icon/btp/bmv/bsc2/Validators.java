@@ -9,6 +9,8 @@ import java.util.List;
 
 public class Validators {
     private final List<Validator> validators;
+    // aggregation of all public keys, the instance is shared by snapshots of an epoch
+    private byte[] aggregationCache;
 
     public Validators(List<Validator> validators) {
         this.validators = validators;
@@ -56,6 +58,13 @@ public class Validators {
         return keys;
     }
 
+    public byte[] getAggregatedPublicKey() {
+        if (aggregationCache == null) {
+            aggregationCache = BLSPublicKey.aggregate(getPublicKeys());
+        }
+        return aggregationCache;
+    }
+
     public boolean contains(Validator validator) {
         return validators.contains(validator);
     }
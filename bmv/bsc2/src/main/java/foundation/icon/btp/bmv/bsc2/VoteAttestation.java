@@ -48,6 +48,24 @@ public class VoteAttestation {
         w.end();
     }
 
+    /**
+     * Writes the attestation without the signature and the extra, which are not used after verification.
+     */
+    public static void writeRecord(ObjectWriter w, VoteAttestation o) {
+        w.beginList(2);
+        w.write(o.votes);
+        w.write(o.range);
+        w.end();
+    }
+
+    public static VoteAttestation readRecord(ObjectReader r) {
+        r.beginList();
+        byte[] votes = r.readByteArray();
+        VoteRange range = r.read(VoteRange.class);
+        r.end();
+        return new VoteAttestation(votes, null, range, null);
+    }
+
     public VoteRange getVoteRange() {
         return range;
     }
@@ -78,11 +96,10 @@ public class VoteAttestation {
         }
         Context.require(keys.size() >= Utils.ceilDiv(validators.size() * 2, 3), "Short quorum");
 
-        byte[] aggregation = null;
-        for (BLSPublicKey key : keys) {
-            aggregation = Context.aggregate("bls12-381-g1", aggregation, key.toBytes());
+        if (keys.size() == validators.size()) {
+            return validators.getAggregatedPublicKey();
         }
-        return aggregation;
+        return BLSPublicKey.aggregate(keys);
     }
 
     private int count() {
@@ -12,7 +12,9 @@ import org.junit.jupiter.api.TestFactory;
 import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
@@ -65,4 +67,72 @@ public class BMVTest extends TestBase {
             return t;
         }
     }
+
+    /**
+     * Checks the finalized height against the finality computed from vote attestations in header extra,
+     * while the verifier reads the attestation records of snapshots.
+     */
+    public static class TestnetFinalityTest {
+        private static final List<DataSource.Case> cases = DataSource.loadCases("testnet.json");
+
+        @TestFactory
+        public Collection<DynamicTest> finalityTests() {
+            List<DynamicTest> t = new ArrayList<>();
+            for (DataSource.Case c : cases) {
+                t.add(DynamicTest.dynamicTest(c.getDescription(),
+                        () -> {
+                            Score bmv = deployBmv(c.getDeployment());
+                            finalityTest(c, bmv, "0x1234567890123456789012345678901234567890");
+                        }
+                ));
+            }
+            return t;
+        }
+
+        private static void finalityTest(DataSource.Case c, Score bmv, String prev) {
+            ChainConfig config = ChainConfig.setChainID(c.getDeployment().getChainId());
+            Header root = Header.fromBytes(c.getDeployment().getHeader());
+            Map<Hash, Header> heads = new HashMap<>();
+            Map<Hash, VoteAttestation> attestations = new HashMap<>();
+            heads.put(root.getHash(), root);
+            attestations.put(root.getHash(), root.getVoteAttestation(config));
+
+            for (DataSource.Case.Phase p : c.getPhases()) {
+                sm.call(BMC, BigInteger.ZERO, bmv.getAddress(), "handleRelayMessage",
+                        BMC_BTP_ADDR.toString(), prev, BigInteger.valueOf(0), p.getMessage());
+
+                RelayMessage rm = RelayMessage.fromBytes(p.getMessage());
+                for (RelayMessage.TypePrefixedMessage tpm : rm.getMessages()) {
+                    if (!(tpm.getMessage() instanceof BlockUpdate)) {
+                        continue;
+                    }
+                    List<Header> headers = ((BlockUpdate) tpm.getMessage()).getHeaders();
+                    for (Header head : headers) {
+                        VoteAttestation atte = head.getVoteAttestation(config);
+                        heads.put(head.getHash(), head);
+                        attestations.put(head.getHash(),
+                                atte != null ? atte : attestations.get(head.getParentHash()));
+                    }
+                    if (!headers.isEmpty()) {
+                        root = finalize(heads, attestations, root, headers.get(headers.size() - 1));
+                    }
+                }
+                BMVStatus status = bmv.call(BMVStatus.class, "getStatus");
+                assertEquals(root.getNumber().longValue(), status.getHeight());
+            }
+        }
+
+        private static Header finalize(Map<Hash, Header> heads, Map<Hash, VoteAttestation> attestations,
+                Header root, Header leaf) {
+            Header head = leaf;
+            while (!head.getHash().equals(root.getHash())) {
+                VoteRange range = attestations.get(head.getHash()).getVoteRange();
+                if (range.getTargetNumber().equals(range.getSourceNumber().add(BigInteger.ONE))) {
+                    return heads.get(range.getSourceHash());
+                }
+                head = heads.get(head.getParentHash());
+            }
+            return root;
+        }
+    }
 }
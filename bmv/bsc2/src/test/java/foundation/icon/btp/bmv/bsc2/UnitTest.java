@@ -4,11 +4,21 @@ import com.iconloop.score.test.ManualRevertException;
 import com.iconloop.score.test.TestBase;
 import foundation.icon.score.util.StringUtil;
 import org.junit.jupiter.api.Test;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class UnitTest extends TestBase {
     public static class VoteAttestationTest {
@@ -46,7 +56,247 @@ public class UnitTest extends TestBase {
             VoteAttestation attestation = VoteAttestation.fromBytes(StringUtil.hexToBytes("f8b27bb860b53b3719228d17a7d7dc98d69adcc43d6e663ee9d265d1ca4fb3a9cd0d7eff6434b40b1135190ee1dc683684cc48f2290495bf14bc187d068a98a396bca4fa585bfa9c355198fa543a62db80cf4f1d18d913f353407f2aa35336a2cdd53e85daf84c8401e53abea0826b43a928a31836f6025f9ba8d70691c0c32fe5b48b219792365203e8e37f348401e53abfa0dc77f6bcfb22b3ea2de6cb5f2dbe9fd2b8441dbb9785ce2d0d73af81f4709f3880"));
             assertThrows(IllegalArgumentException.class, () -> attestation.verify(validators));
         }
+
+        static byte[] aggregateOneByOne(List<BLSPublicKey> keys) {
+            byte[] aggr = null;
+            for (BLSPublicKey key : keys) {
+                aggr = Context.aggregate("bls12-381-g1", aggr, key.toBytes());
+            }
+            return aggr;
+        }
+
+        @Test
+        void aggregatePublicKeysOfVoters() {
+            byte[] bytes = StringUtil.hexToBytes("f8b27bb860b52b3719228d17a7d7dc98d69adcc43d6e663ee9d265d1ca4fb3a9cd0d7eff6434b40b1135190ee1dc683684cc48f2290495bf14bc187d068a98a396bca4fa585bfa9c355198fa543a62db80cf4f1d18d913f353407f2aa35336a2cdd53e85daf84c8401e53abea0826b43a928a31836f6025f9ba8d70691c0c32fe5b48b219792365203e8e37f348401e53abfa0dc77f6bcfb22b3ea2de6cb5f2dbe9fd2b8441dbb9785ce2d0d73af81f4709f3880");
+            VoteAttestation signed = VoteAttestation.fromBytes(bytes);
+            ObjectReader r = Context.newByteArrayObjectReader("RLP", bytes);
+            r.beginList();
+            r.readByteArray();
+            byte[] signature = r.readByteArray();
+
+            // the attestation is signed by the validators except the third one
+            List<BLSPublicKey> keys = new ArrayList<>(validators.getPublicKeys());
+            keys.remove(2);
+            assertArrayEquals(aggregateOneByOne(keys), signed.aggregate(validators));
+
+            // same signers as the whole validators, whose aggregation is cached
+            List<Validator> list = new ArrayList<>();
+            for (int i = 0; i < validators.size(); i++) {
+                if (i != 2) {
+                    list.add(validators.get(i));
+                }
+            }
+            int[] calls = new int[1];
+            Validators voters = new Validators(list) {
+                @Override
+                public byte[] getAggregatedPublicKey() {
+                    calls[0]++;
+                    return super.getAggregatedPublicKey();
+                }
+            };
+            VoteAttestation all = new VoteAttestation(new byte[]{0x3f}, signature, signed.getVoteRange(), new byte[0]);
+            assertDoesNotThrow(() -> all.verify(voters));
+            assertArrayEquals(aggregateOneByOne(keys), all.aggregate(voters));
+            assertEquals(2, calls[0]);
+            assertSame(voters.getAggregatedPublicKey(), all.aggregate(voters));
+
+            // partial voters are aggregated without the cache
+            calls[0] = 0;
+            VoteAttestation partial = new VoteAttestation(new byte[]{0x3e}, signature, signed.getVoteRange(), new byte[0]);
+            assertArrayEquals(aggregateOneByOne(keys.subList(1, keys.size())), partial.aggregate(voters));
+            assertEquals(0, calls[0]);
+        }
     }
-}
 
+    public static class BlockTreeTest {
+        static Hash hash(int i) {
+            byte[] b = new byte[32];
+            b[30] = (byte) (i >> 8);
+            b[31] = (byte) i;
+            return Hash.of(b);
+        }
+
+        static byte[] status(BlockTree tree) {
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            BlockTree.writeObject(w, tree);
+            return w.toByteArray();
+        }
+
+        // 0 - 1 - 2 - 3 - 4
+        //      \- 5 - 6
+        //       \- 7
+        static BlockTree sample(String id) {
+            BlockTree tree = new BlockTree(id);
+            tree.init(hash(0));
+            for (int i = 1; i <= 4; i++) {
+                tree.add(hash(i - 1), hash(i));
+            }
+            tree.add(hash(1), hash(5));
+            tree.add(hash(5), hash(6));
+            tree.add(hash(1), hash(7));
+            return tree;
+        }
+
+        @Test
+        void getStemFromRoot() {
+            BlockTree tree = sample("stemTree");
+            assertEquals(List.of(hash(0), hash(1), hash(2), hash(3), hash(4)), tree.getStem(hash(4)));
+            assertEquals(List.of(hash(0), hash(1), hash(5), hash(6)), tree.getStem(hash(6)));
+            assertEquals(List.of(hash(0)), tree.getStem(hash(0)));
+            assertTrue(tree.getStem(hash(8)).isEmpty());
+
+            tree.flush();
+            tree.prune(hash(1), null);
+            assertEquals(List.of(hash(1), hash(5), hash(6)), tree.getStem(hash(6)));
+            assertTrue(tree.getStem(hash(0)).isEmpty());
+        }
+
+        @Test
+        void rejectDuplicatedOrOrphanNode() {
+            BlockTree tree = sample("dupTree");
+            tree.flush();
+            assertThrows(AssertionError.class, () -> tree.add(hash(2), hash(3)));
+            assertThrows(AssertionError.class, () -> tree.add(hash(3), hash(0)));
+            assertThrows(AssertionError.class, () -> tree.add(hash(9), hash(10)));
+        }
+
+        @Test
+        void pruneAndReload() {
+            BlockTree tree = sample("pruneTree");
+            tree.flush();
+
+            List<Hash> removed = new ArrayList<>();
+            tree.prune(hash(5), removed::add);
+            assertEquals(List.of(hash(0), hash(1), hash(7), hash(2), hash(3), hash(4)), removed);
+            tree.add(hash(6), hash(8));
+            tree.flush();
+
+            BlockTree loaded = new BlockTree("pruneTree");
+            assertEquals(hash(5), loaded.getRoot());
+            assertEquals(List.of(hash(5), hash(6), hash(8)), loaded.getStem(hash(8)));
+            for (Hash id : removed) {
+                assertFalse(loaded.contains(id));
+            }
+        }
+
+        @Test
+        void pruneWideForkInSteps() {
+            // 0 - 1 - 2 - 3, and 20 siblings of 1 having a child each
+            BlockTree tree = new BlockTree("wideTree");
+            tree.init(hash(0));
+            for (int i = 1; i <= 3; i++) {
+                tree.add(hash(i - 1), hash(i));
+            }
+            for (int i = 0; i < 20; i++) {
+                tree.add(hash(0), hash(100 + i));
+                tree.add(hash(100 + i), hash(200 + i));
+            }
+            tree.flush();
 
+            List<Hash> removed = new ArrayList<>();
+            tree.prune(hash(2), removed::add);
+            tree.flush();
+            assertEquals(2 + BlockTree.PRUNE_LIMIT, removed.size());
+            for (int i = 0; i < 20; i++) {
+                assertFalse(tree.contains(hash(100 + i)));
+                assertFalse(tree.contains(hash(200 + i)));
+            }
+
+            tree.prune(hash(3), removed::add);
+            tree.flush();
+            assertEquals(3 + 2 * BlockTree.PRUNE_LIMIT, removed.size());
+            tree.prune(hash(3), removed::add);
+            tree.flush();
+            assertEquals(43, removed.size());
+            for (int i = 0; i < 20; i++) {
+                assertTrue(removed.contains(hash(100 + i)));
+                assertTrue(removed.contains(hash(200 + i)));
+            }
+
+            BlockTree loaded = new BlockTree("wideTree");
+            loaded.prune(hash(3), removed::add);
+            assertEquals(43, removed.size());
+            assertTrue(loaded.contains(hash(3)));
+        }
+
+        @Test
+        void migrateLegacyTree() {
+            BlockTree tree = sample("legacySource");
+            byte[] status = status(tree);
+            BlockTree.Legacy legacy = Context.newByteArrayObjectReader("RLPn", status).read(BlockTree.Legacy.class);
+
+            BlockTree migrated = new BlockTree("migrated");
+            migrated.migrate(legacy);
+            migrated.flush();
+            assertArrayEquals(status, status(new BlockTree("migrated")));
+            assertEquals(tree.getStem(hash(6)), migrated.getStem(hash(6)));
+        }
+    }
+
+    public static class SnapshotDeltaTest {
+        static final VoteAttestation attestation = VoteAttestation.fromBytes(StringUtil.hexToBytes("f8b27bb860b52b3719228d17a7d7dc98d69adcc43d6e663ee9d265d1ca4fb3a9cd0d7eff6434b40b1135190ee1dc683684cc48f2290495bf14bc187d068a98a396bca4fa585bfa9c355198fa543a62db80cf4f1d18d913f353407f2aa35336a2cdd53e85daf84c8401e53abea0826b43a928a31836f6025f9ba8d70691c0c32fe5b48b219792365203e8e37f348401e53abfa0dc77f6bcfb22b3ea2de6cb5f2dbe9fd2b8441dbb9785ce2d0d73af81f4709f3880"));
+
+        static Snapshot snapshot(int number, Validators validators, Validators candidates) {
+            EthAddresses recents = new EthAddresses(new ArrayList<>(List.of(validators.get(number % validators.size()).getAddress())));
+            return new Snapshot(BlockTreeTest.hash(number), BigInteger.valueOf(number), validators, candidates,
+                    validators, recents, attestation, 1, 1, 1, 0);
+        }
+
+        static byte[] encode(Object o) {
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            w.write(o);
+            return w.toByteArray();
+        }
+
+        static Snapshot.Delta decode(Snapshot.Delta delta) {
+            return Context.newByteArrayObjectReader("RLPn", encode(delta)).read(Snapshot.Delta.class);
+        }
+
+        @Test
+        void keepValidatorSetsOnlyIfChanged() {
+            Validators validators = VoteAttestationTest.validators;
+            Validators candidates = new Validators(new ArrayList<>(List.of(validators.get(0), validators.get(1))));
+            Snapshot parent = snapshot(1, validators, candidates);
+            Hash parentSetsAt = BlockTreeTest.hash(0);
+
+            Snapshot.Delta same = decode(Snapshot.Delta.of(snapshot(2, validators, candidates), parent, parentSetsAt));
+            assertFalse(same.hasValidatorSets());
+            assertEquals(parentSetsAt, same.getSetsAt());
+            assertArrayEquals(encode(snapshot(2, validators, candidates)), encode(same.toSnapshot(parent)));
+
+            Snapshot changed = snapshot(3, candidates, candidates);
+            Snapshot.Delta delta = decode(Snapshot.Delta.of(changed, parent, parentSetsAt));
+            assertTrue(delta.hasValidatorSets());
+            assertEquals(changed.getHash(), delta.getSetsAt());
+            assertArrayEquals(encode(changed), encode(delta.toSnapshot(parent)));
+        }
+
+        @Test
+        void readSnapshotOfPreviousVersion() {
+            Validators validators = VoteAttestationTest.validators;
+            Snapshot snap = snapshot(1, validators, validators);
+
+            // previous versions write the whole attestation in the middle
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            w.beginList(11);
+            w.write(snap.getHash());
+            w.write(snap.getNumber());
+            w.write(snap.getValidators());
+            w.write(snap.getCandidates());
+            w.write(snap.getVoters());
+            w.write(snap.getRecents());
+            w.write(attestation);
+            w.write(1);
+            w.write(1);
+            w.write(1);
+            w.write(0);
+            w.end();
+            byte[] legacy = w.toByteArray();
+
+            Snapshot read = Context.newByteArrayObjectReader("RLPn", legacy).read(Snapshot.class);
+            assertEquals(attestation.getVoteRange().getSourceHash(), read.getVoteAttestation().getVoteRange().getSourceHash());
+            assertArrayEquals(encode(snap), encode(read));
+            assertTrue(encode(snap).length < legacy.length);
+        }
+    }
+}
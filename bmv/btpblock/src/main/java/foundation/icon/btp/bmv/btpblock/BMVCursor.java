@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.bmv.btpblock;
+
+import score.ObjectReader;
+import score.ObjectWriter;
+import scorex.util.ArrayList;
+
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * Position of the verifier in the network section chain and its messages,
+ * which is updated by every block update and message proof.
+ */
+public class BMVCursor {
+    private byte[] lastNetworkSectionHash;
+    private BigInteger lastSequence;
+    private byte[] lastMessagesRoot;
+    private BigInteger lastMessageCount;
+    private BigInteger lastFirstMessageSN;
+    private BigInteger height;
+    private ProofNode[] lastProofInLeft;
+
+    public byte[] getLastNetworkSectionHash() {
+        return lastNetworkSectionHash;
+    }
+
+    public void setLastNetworkSectionHash(byte[] lastNetworkSectionHash) {
+        this.lastNetworkSectionHash = lastNetworkSectionHash;
+    }
+
+    public BigInteger getLastSequence() {
+        return lastSequence;
+    }
+
+    public void setLastSequence(BigInteger lastSequence) {
+        this.lastSequence = lastSequence;
+    }
+
+    public byte[] getLastMessagesRoot() {
+        return lastMessagesRoot;
+    }
+
+    public void setLastMessagesRoot(byte[] lastMessagesRoot) {
+        this.lastMessagesRoot = lastMessagesRoot;
+    }
+
+    public BigInteger getLastMessageCount() {
+        return lastMessageCount;
+    }
+
+    public void setLastMessageCount(BigInteger lastMessageCount) {
+        this.lastMessageCount = lastMessageCount;
+    }
+
+    public BigInteger getLastFirstMessageSN() {
+        return lastFirstMessageSN;
+    }
+
+    public void setLastFirstMessageSN(BigInteger lastFirstMessageSN) {
+        this.lastFirstMessageSN = lastFirstMessageSN;
+    }
+
+    public BigInteger getProcessedMessageCount() {
+        return lastSequence.subtract(lastFirstMessageSN);
+    }
+
+    public BigInteger getRemainMessageCount() {
+        return lastMessageCount.subtract(getProcessedMessageCount());
+    }
+
+    public BigInteger getHeight() {
+        return height;
+    }
+
+    public void setHeight(BigInteger height) {
+        this.height = height;
+    }
+
+    /**
+     * Returns ProofInLeft of the remaining messages of the last messages root, which is kept to continue
+     * the message proof without the messages already processed.
+     */
+    public ProofNode[] getLastProofInLeft() {
+        return lastProofInLeft;
+    }
+
+    public void setLastProofInLeft(ProofNode[] lastProofInLeft) {
+        this.lastProofInLeft = lastProofInLeft;
+    }
+
+    public static BMVCursor readObject(ObjectReader reader) {
+        BMVCursor obj = new BMVCursor();
+        reader.beginList();
+        obj.setLastNetworkSectionHash(reader.readNullable(byte[].class));
+        obj.setLastSequence(reader.readNullable(BigInteger.class));
+        obj.setLastMessagesRoot(reader.readNullable(byte[].class));
+        obj.setLastMessageCount(reader.readNullable(BigInteger.class));
+        obj.setLastFirstMessageSN(reader.readNullable(BigInteger.class));
+        obj.setHeight(reader.readBigInteger());
+        if (reader.hasNext()) {
+            obj.setLastProofInLeft(readProofNodes(reader));
+        }
+        reader.end();
+        return obj;
+    }
+
+    public static void writeObject(ObjectWriter writer, BMVCursor obj) {
+        writer.beginList(obj.lastProofInLeft == null ? 6 : 7);
+        writer.writeNullable(obj.lastNetworkSectionHash);
+        writer.writeNullable(obj.lastSequence);
+        writer.writeNullable(obj.lastMessagesRoot);
+        writer.writeNullable(obj.lastMessageCount);
+        writer.writeNullable(obj.lastFirstMessageSN);
+        writer.write(obj.height);
+        if (obj.lastProofInLeft != null) {
+            writeProofNodes(writer, obj.lastProofInLeft);
+        }
+        writer.end();
+    }
+
+    private static ProofNode[] readProofNodes(ObjectReader reader) {
+        List<ProofNode> list = new ArrayList<>();
+        reader.beginList();
+        while (reader.hasNext()) {
+            list.add(ProofNode.readObject(reader));
+        }
+        reader.end();
+        ProofNode[] nodes = new ProofNode[list.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = list.get(i);
+        }
+        return nodes;
+    }
+
+    private static void writeProofNodes(ObjectWriter writer, ProofNode[] nodes) {
+        writer.beginList(nodes.length);
+        for (ProofNode node : nodes) {
+            ProofNode.writeObject(writer, node);
+        }
+        writer.end();
+    }
+}
@@ -21,24 +21,11 @@ import score.*;
 import java.math.BigInteger;
 
 public class BMVProperties {
-    public static final BMVProperties DEFAULT;
-
-    static {
-        DEFAULT = new BMVProperties();
-    }
-
     private byte[] srcNetworkID;
     private int networkTypeID;
     private BigInteger networkID;
     private byte[] proofContextHash;
-    private byte[] proofContext;
-    private byte[] lastNetworkSectionHash;
     private Address bmc;
-    private BigInteger lastSequence;
-    private byte[] lastMessagesRoot;
-    private BigInteger lastMessageCount;
-    private BigInteger lastFirstMessageSN;
-    private BigInteger height;
     private BigInteger sequenceOffset;
 
     public byte[] getSrcNetworkID() {
@@ -79,62 +66,6 @@ public class BMVProperties {
         this.proofContextHash = proofContextHash;
     }
 
-    public byte[] getProofContext() {
-        return proofContext;
-    }
-
-    public void setProofContext(byte[] proofContext) {
-        this.proofContext = proofContext;
-    }
-
-    public byte[] getLastNetworkSectionHash() {
-        return lastNetworkSectionHash;
-    }
-
-    public void setLastNetworkSectionHash(byte[] lastNetworkSectionHash) {
-        this.lastNetworkSectionHash = lastNetworkSectionHash;
-    }
-
-    public BigInteger getLastSequence() {
-        return lastSequence;
-    }
-
-    public void setLastSequence(BigInteger lastSequence) {
-        this.lastSequence = lastSequence;
-    }
-
-    public byte[] getLastMessagesRoot() {
-        return lastMessagesRoot;
-    }
-
-    public void setLastMessagesRoot(byte[] lastMessagesRoot) {
-        this.lastMessagesRoot = lastMessagesRoot;
-    }
-
-    public BigInteger getLastMessageCount() {
-        return lastMessageCount;
-    }
-
-    public void setLastMessageCount(BigInteger lastMessageCount) {
-        this.lastMessageCount = lastMessageCount;
-    }
-
-    public BigInteger getLastFirstMessageSN() {
-        return lastFirstMessageSN;
-    }
-
-    public void setLastFirstMessageSN(BigInteger lastFirstMessageSN) {
-        this.lastFirstMessageSN = lastFirstMessageSN;
-    }
-
-    public BigInteger getProcessedMessageCount() {
-        return lastSequence.subtract(lastFirstMessageSN);
-    }
-
-    public BigInteger getRemainMessageCount() {
-        return lastMessageCount.subtract(getProcessedMessageCount());
-    }
-
     public Address getBmc() {
         return bmc;
     }
@@ -143,14 +74,6 @@ public class BMVProperties {
         this.bmc = bmc;
     }
 
-    public BigInteger getHeight() {
-        return height;
-    }
-
-    public void setHeight(BigInteger height) {
-        this.height = height;
-    }
-
     public BigInteger getSequenceOffset() {
         return sequenceOffset;
     }
@@ -159,7 +82,6 @@ public class BMVProperties {
         this.sequenceOffset = sequenceOffset;
     }
 
-
     public static BMVProperties readObject(ObjectReader reader) {
         BMVProperties obj = new BMVProperties();
         reader.beginList();
@@ -167,34 +89,79 @@ public class BMVProperties {
         obj.setNetworkTypeID(reader.readInt());
         obj.setNetworkID(reader.readNullable(BigInteger.class));
         obj.setProofContextHash(reader.readNullable(byte[].class));
-        obj.setProofContext(reader.readNullable(byte[].class));
-        obj.setLastNetworkSectionHash(reader.readNullable(byte[].class));
         obj.setBmc(reader.readAddress());
-        obj.setLastSequence(reader.readNullable(BigInteger.class));
-        obj.setLastMessagesRoot(reader.readNullable(byte[].class));
-        obj.setLastMessageCount(reader.readNullable(BigInteger.class));
-        obj.setLastFirstMessageSN(reader.readNullable(BigInteger.class));
-        obj.setHeight(reader.readBigInteger());
         obj.setSequenceOffset(reader.readBigInteger());
         reader.end();
         return obj;
     }
 
     public static void writeObject(ObjectWriter writer, BMVProperties obj) {
-        writer.beginList(11);
+        writer.beginList(6);
         writer.write(obj.srcNetworkID);
         writer.write(obj.networkTypeID);
         writer.writeNullable(obj.networkID);
         writer.writeNullable(obj.proofContextHash);
-        writer.writeNullable(obj.proofContext);
-        writer.writeNullable(obj.lastNetworkSectionHash);
         writer.write(obj.bmc);
-        writer.writeNullable(obj.lastSequence);
-        writer.writeNullable(obj.lastMessagesRoot);
-        writer.writeNullable(obj.lastMessageCount);
-        writer.writeNullable(obj.lastFirstMessageSN);
-        writer.write(obj.height);
         writer.write(obj.sequenceOffset);
         writer.end();
     }
+
+    /**
+     * Properties of previous versions which kept the proof context and the cursor in one record.
+     */
+    public static class Legacy {
+        private final BMVProperties properties = new BMVProperties();
+        private final BMVCursor cursor = new BMVCursor();
+        private byte[] proofContext;
+
+        public BMVProperties getProperties() {
+            return properties;
+        }
+
+        public BMVCursor getCursor() {
+            return cursor;
+        }
+
+        public byte[] getProofContext() {
+            return proofContext;
+        }
+
+        public static Legacy readObject(ObjectReader reader) {
+            Legacy obj = new Legacy();
+            reader.beginList();
+            obj.properties.setSrcNetworkID(reader.readByteArray());
+            obj.properties.setNetworkTypeID(reader.readInt());
+            obj.properties.setNetworkID(reader.readNullable(BigInteger.class));
+            obj.properties.setProofContextHash(reader.readNullable(byte[].class));
+            obj.proofContext = reader.readNullable(byte[].class);
+            obj.cursor.setLastNetworkSectionHash(reader.readNullable(byte[].class));
+            obj.properties.setBmc(reader.readAddress());
+            obj.cursor.setLastSequence(reader.readNullable(BigInteger.class));
+            obj.cursor.setLastMessagesRoot(reader.readNullable(byte[].class));
+            obj.cursor.setLastMessageCount(reader.readNullable(BigInteger.class));
+            obj.cursor.setLastFirstMessageSN(reader.readNullable(BigInteger.class));
+            obj.cursor.setHeight(reader.readBigInteger());
+            obj.properties.setSequenceOffset(reader.readBigInteger());
+            reader.end();
+            return obj;
+        }
+
+        public static void writeObject(ObjectWriter writer, Legacy obj) {
+            writer.beginList(13);
+            writer.write(obj.properties.srcNetworkID);
+            writer.write(obj.properties.networkTypeID);
+            writer.writeNullable(obj.properties.networkID);
+            writer.writeNullable(obj.properties.proofContextHash);
+            writer.writeNullable(obj.proofContext);
+            writer.writeNullable(obj.cursor.getLastNetworkSectionHash());
+            writer.write(obj.properties.bmc);
+            writer.writeNullable(obj.cursor.getLastSequence());
+            writer.writeNullable(obj.cursor.getLastMessagesRoot());
+            writer.writeNullable(obj.cursor.getLastMessageCount());
+            writer.writeNullable(obj.cursor.getLastFirstMessageSN());
+            writer.write(obj.cursor.getHeight());
+            writer.write(obj.properties.sequenceOffset);
+            writer.end();
+        }
+    }
 }
@@ -20,7 +20,9 @@ import foundation.icon.btp.lib.BMV;
 import foundation.icon.btp.lib.BMVStatus;
 import foundation.icon.btp.lib.BTPAddress;
 import score.Address;
+import score.BranchDB;
 import score.Context;
+import score.DictDB;
 import score.VarDB;
 import score.annotation.External;
 import score.annotation.Optional;
@@ -33,7 +35,16 @@ import java.util.List;
 public class BTPMessageVerifier implements BMV {
     private static final String HASH = "keccak-256";
     private static final String SIGNATURE_ALG = "ecdsa-secp256k1";
-    private final VarDB<BMVProperties> propertiesDB = Context.newVarDB("properties", BMVProperties.class);
+    private final VarDB<BMVProperties.Legacy> legacyPropertiesDB =
+            Context.newVarDB("properties", BMVProperties.Legacy.class);
+    private final VarDB<BMVProperties> propertiesDB = Context.newVarDB("bmvProperties", BMVProperties.class);
+    private final VarDB<BMVCursor> cursorDB = Context.newVarDB("cursor", BMVCursor.class);
+    private final VarDB<byte[]> proofContextDB = Context.newVarDB("proofContext", byte[].class);
+    // proofContextHash => validator address => index in proofContext
+    private final BranchDB<byte[], DictDB<byte[], Integer>> validatorIndexes =
+            Context.newBranchDB("validatorIndexes", Integer.class);
+    // decoded proofContext, valid only within a call
+    private ProofContext proofContext;
 
     public BTPMessageVerifier(
             @Optional String srcNetworkID,
@@ -42,39 +53,108 @@ public class BTPMessageVerifier implements BMV {
             @Optional byte[] blockHeader,
             @Optional BigInteger seqOffset
     ) {
+        migrateProperties();
         BMVProperties bmvProperties = getProperties();
-        if (srcNetworkID == null && networkTypeID == 0 && bmc == null && blockHeader == null && seqOffset.signum() == 0) return;
+        // indexes of the current proof context are required whether the parameters are given or not
+        migrateValidatorIndexes(bmvProperties);
+        if (srcNetworkID == null && networkTypeID == 0 && bmc == null && blockHeader == null && seqOffset.signum() == 0) {
+            return;
+        }
         if (srcNetworkID != null) bmvProperties.setSrcNetworkID(srcNetworkID.getBytes());
         bmvProperties.setNetworkTypeID(networkTypeID);
         if (bmc != null) bmvProperties.setBmc(bmc);
         bmvProperties.setSequenceOffset(seqOffset);
         if (blockHeader != null) handleFirstBlockHeader(BlockHeader.fromBytes(blockHeader), bmvProperties);
+        proofContext = null;
     }
 
     public BMVProperties getProperties() {
-        return propertiesDB.getOrDefault(BMVProperties.DEFAULT);
+        var properties = propertiesDB.get();
+        return properties != null ? properties : new BMVProperties();
+    }
+
+    public BMVCursor getCursor() {
+        var cursor = cursorDB.get();
+        return cursor != null ? cursor : new BMVCursor();
+    }
+
+    private void migrateProperties() {
+        var legacy = legacyPropertiesDB.get();
+        if (legacy == null) return;
+        propertiesDB.set(legacy.getProperties());
+        cursorDB.set(legacy.getCursor());
+        proofContextDB.set(legacy.getProofContext());
+        legacyPropertiesDB.set(null);
+    }
+
+    private ProofContext getProofContext() {
+        if (proofContext == null) {
+            proofContext = ProofContext.fromBytes(proofContextDB.get());
+        }
+        return proofContext;
+    }
+
+    private void setProofContext(BMVProperties bmvProperties, byte[] proofContextHash, byte[] proofContextBytes) {
+        var currentHash = bmvProperties.getProofContextHash();
+        if (currentHash != null && !Arrays.equals(currentHash, proofContextHash)) {
+            var indexes = validatorIndexes.at(currentHash);
+            for (EthAddress validator : getProofContext().getValidators()) {
+                indexes.set(validator.toBytes(), null);
+            }
+        }
+        proofContext = ProofContext.fromBytes(proofContextBytes);
+        putValidatorIndexes(proofContextHash, proofContext);
+        bmvProperties.setProofContextHash(proofContextHash);
+        proofContextDB.set(proofContextBytes);
+    }
+
+    private void putValidatorIndexes(byte[] proofContextHash, ProofContext proofContext) {
+        var indexes = validatorIndexes.at(proofContextHash);
+        var validators = proofContext.getValidators();
+        for (int i = 0; i < validators.length; i++) {
+            indexes.set(validators[i].toBytes(), i);
+        }
+    }
+
+    private void migrateValidatorIndexes(BMVProperties bmvProperties) {
+        var proofContextHash = bmvProperties.getProofContextHash();
+        if (proofContextHash == null) return;
+        var validators = getProofContext().getValidators();
+        if (validators.length > 0 && validatorIndexes.at(proofContextHash).get(validators[0].toBytes()) == null) {
+            putValidatorIndexes(proofContextHash, proofContext);
+        }
+        proofContext = null;
     }
 
     @External
     public byte[][] handleRelayMessage(String _bmc, String _prev, BigInteger _seq, byte[] _msg) {
         BTPAddress curAddr = BTPAddress.valueOf(_bmc);
         BTPAddress prevAddr = BTPAddress.valueOf(_prev);
-        checkAccessible(curAddr, prevAddr);
         var bmvProperties = getProperties();
-        var lastSeq = bmvProperties.getLastSequence();
+        checkAccessible(bmvProperties, curAddr, prevAddr);
+        var cursor = getCursor();
+        var lastSeq = cursor.getLastSequence();
         var seq = bmvProperties.getSequenceOffset().add(lastSeq);
         if (seq.compareTo(_seq) != 0) throw BMVException.unknown("invalid sequence");
         RelayMessage relayMessages = RelayMessage.fromBytes(_msg);
         RelayMessage.TypePrefixedMessage[] typePrefixedMessages = relayMessages.getMessages();
+        Object[] decoded = new Object[typePrefixedMessages.length];
+        int lastBlockUpdate = -1;
+        for (int i = 0; i < decoded.length; i++) {
+            decoded[i] = typePrefixedMessages[i].getMessage();
+            if (decoded[i] instanceof BlockUpdate) lastBlockUpdate = i;
+        }
         BlockUpdate blockUpdate = null;
         List<byte[]> msgList = new ArrayList<>();
-        for (RelayMessage.TypePrefixedMessage message : typePrefixedMessages) {
-            Object msg = message.getMessage();
+        for (int i = 0; i < decoded.length; i++) {
+            Object msg = decoded[i];
             if (msg instanceof BlockUpdate) {
                 blockUpdate = (BlockUpdate) msg;
-                handleBlockUpdateMessage(blockUpdate);
+                // block update without proof is verified by the following one through the network section chain
+                var chained = blockUpdate.getBlockProof() == null && i < lastBlockUpdate;
+                handleBlockUpdateMessage(blockUpdate, bmvProperties, cursor, chained);
             } else if (msg instanceof MessageProof) {
-                var msgs = handleMessageProof((MessageProof) msg, blockUpdate);
+                var msgs = handleMessageProof((MessageProof) msg, blockUpdate, cursor);
                 for(byte[] m : msgs) {
                     msgList.add(m);
                 }
@@ -87,6 +167,8 @@ public class BTPMessageVerifier implements BMV {
                 ret[i] = msgList.get(i);
             }
         }
+        cursorDB.set(cursor);
+        proofContext = null;
         Context.setFeeSharingProportion(100);
         return ret;
     }
@@ -99,12 +181,13 @@ public class BTPMessageVerifier implements BMV {
     @External(readonly = true)
     public BMVStatus getStatus() {
         var properties = getProperties();
+        var cursor = getCursor();
         BMVStatus s = new BMVStatus();
-        s.setHeight(properties.getHeight().longValue());
+        s.setHeight(cursor.getHeight().longValue());
         s.setExtra(new BMVStatusExtra(
                 properties.getSequenceOffset(),
-                properties.getLastFirstMessageSN(),
-                properties.getLastMessageCount()).toBytes());
+                cursor.getLastFirstMessageSN(),
+                cursor.getLastMessageCount()).toBytes());
         return s;
     }
 
@@ -127,26 +210,27 @@ public class BTPMessageVerifier implements BMV {
         if (!Arrays.equals(hash(nextProofContext), nextProofContextHash))
             throw BMVException.unknown("mismatch Hash of proofContext");
         bmvProperties.setNetworkID(blockUpdateNid);
-        bmvProperties.setProofContextHash(nextProofContextHash);
-        bmvProperties.setProofContext(nextProofContext);
-        bmvProperties.setLastNetworkSectionHash(nsHash);
-        bmvProperties.setLastSequence(updateNumber.shiftRight(1));
-        bmvProperties.setLastMessagesRoot(msgRoot);
-        bmvProperties.setLastMessageCount(msgCnt);
-        bmvProperties.setLastFirstMessageSN(blockHeader.getFirstMessageSn());
-        bmvProperties.setHeight(blockHeader.getMainHeight());
+        setProofContext(bmvProperties, nextProofContextHash, nextProofContext);
+        var cursor = new BMVCursor();
+        cursor.setLastNetworkSectionHash(nsHash);
+        cursor.setLastSequence(updateNumber.shiftRight(1));
+        cursor.setLastMessagesRoot(msgRoot);
+        cursor.setLastMessageCount(msgCnt);
+        cursor.setLastFirstMessageSN(blockHeader.getFirstMessageSn());
+        cursor.setHeight(blockHeader.getMainHeight());
+        cursorDB.set(cursor);
         propertiesDB.set(bmvProperties);
     }
 
-    private void handleBlockUpdateMessage(BlockUpdate blockUpdate) {
-        var bmvProperties = getProperties();
+    private void handleBlockUpdateMessage(
+            BlockUpdate blockUpdate, BMVProperties bmvProperties, BMVCursor cursor, boolean chained) {
         var networkID = bmvProperties.getNetworkID();
         var blockHeader = blockUpdate.getBlockHeader();
         var updateNumber = blockHeader.getUpdateNumber();
         var blockUpdateNid = blockHeader.getNid();
         var prev = blockHeader.getPrev();
-        var firstMessageSn = bmvProperties.getLastFirstMessageSN();
-        var messageCount = bmvProperties.getLastMessageCount();
+        var firstMessageSn = cursor.getLastFirstMessageSN();
+        var messageCount = cursor.getLastMessageCount();
         var seqOffset = bmvProperties.getSequenceOffset();
         var messageSn = firstMessageSn.add(messageCount).subtract(seqOffset);
         if (messageSn.compareTo(blockHeader.getFirstMessageSn()) > 0) {
@@ -154,9 +238,9 @@ public class BTPMessageVerifier implements BMV {
         } else if (messageSn.compareTo(blockHeader.getFirstMessageSn()) < 0) {
             throw BMVException.notVerifiable("not verifiable blockUpdate");
         }
-        if (bmvProperties.getRemainMessageCount().compareTo(BigInteger.ZERO) != 0) throw BMVException.unknown("remain must be zero");
+        if (cursor.getRemainMessageCount().compareTo(BigInteger.ZERO) != 0) throw BMVException.unknown("remain must be zero");
         if (networkID.compareTo(blockUpdateNid) != 0) throw BMVException.unknown("invalid network id");
-        if (!Arrays.equals(bmvProperties.getLastNetworkSectionHash(), prev)) throw BMVException.unknown("mismatch networkSectionHash");
+        if (!Arrays.equals(cursor.getLastNetworkSectionHash(), prev)) throw BMVException.unknown("mismatch networkSectionHash");
         NetworkSection ns = new NetworkSection(
                 blockUpdateNid,
                 updateNumber,
@@ -165,31 +249,36 @@ public class BTPMessageVerifier implements BMV {
                 blockHeader.getMessageRoot()
         );
         var nsHash = ns.hash();
-        var nsRoot = blockHeader.getNetworkSectionsRoot(nsHash);
-        var nextProofContextHash = blockHeader.getNextProofContextHash();
-        NetworkTypeSection nts = new NetworkTypeSection(nextProofContextHash, nsRoot);
-        var srcNetworkID = bmvProperties.getSrcNetworkID();
-        var networkTypeID = bmvProperties.getNetworkTypeID();
-        var height = blockHeader.getMainHeight();
-        var round = blockHeader.getRound();
-        var ntsHash = nts.hash();
-        NetworkTypeSectionDecision decision = new NetworkTypeSectionDecision(
-                srcNetworkID, networkTypeID, height.longValue(), round.intValue(), ntsHash);
-        Proofs proofs = Proofs.fromBytes(blockUpdate.getBlockProof());
         var isUpdate = updateNumber.and(BigInteger.ONE).compareTo(BigInteger.ONE) == 0;
-        verifyProof(decision, proofs);
-        if (isUpdate) {
-            var nextProofContext = blockHeader.getNextProofContext();
-            verifyProofContextData(nextProofContextHash, nextProofContext, bmvProperties.getProofContextHash());
-            bmvProperties.setProofContextHash(nextProofContextHash);
-            bmvProperties.setProofContext(nextProofContext);
+        if (chained) {
+            // nextProofContextHash is not a part of the network section
+            if (isUpdate) throw BMVException.unknown("proof required to update proofContext");
+        } else {
+            var nsRoot = blockHeader.getNetworkSectionsRoot(nsHash);
+            var nextProofContextHash = blockHeader.getNextProofContextHash();
+            NetworkTypeSection nts = new NetworkTypeSection(nextProofContextHash, nsRoot);
+            var srcNetworkID = bmvProperties.getSrcNetworkID();
+            var networkTypeID = bmvProperties.getNetworkTypeID();
+            var height = blockHeader.getMainHeight();
+            var round = blockHeader.getRound();
+            var ntsHash = nts.hash();
+            NetworkTypeSectionDecision decision = new NetworkTypeSectionDecision(
+                    srcNetworkID, networkTypeID, height.longValue(), round.intValue(), ntsHash);
+            Proofs proofs = Proofs.fromBytes(blockUpdate.getBlockProof());
+            verifyProof(decision, proofs, bmvProperties);
+            if (isUpdate) {
+                var nextProofContext = blockHeader.getNextProofContext();
+                verifyProofContextData(nextProofContextHash, nextProofContext, bmvProperties.getProofContextHash());
+                setProofContext(bmvProperties, nextProofContextHash, nextProofContext);
+                propertiesDB.set(bmvProperties);
+            }
         }
-        bmvProperties.setLastMessagesRoot(blockHeader.getMessageRoot());
-        bmvProperties.setLastMessageCount(blockHeader.getMessageCount());
-        bmvProperties.setLastFirstMessageSN(blockHeader.getFirstMessageSn());
-        bmvProperties.setLastNetworkSectionHash(nsHash);
-        bmvProperties.setHeight(blockHeader.getMainHeight());
-        propertiesDB.set(bmvProperties);
+        cursor.setLastMessagesRoot(blockHeader.getMessageRoot());
+        cursor.setLastMessageCount(blockHeader.getMessageCount());
+        cursor.setLastFirstMessageSN(blockHeader.getFirstMessageSn());
+        cursor.setLastProofInLeft(null);
+        cursor.setLastNetworkSectionHash(nsHash);
+        cursor.setHeight(blockHeader.getMainHeight());
     }
 
     private void verifyProofContextData(byte[] proofContextHash, byte[] proofContext, byte[] currentProofContextHash) {
@@ -197,37 +286,46 @@ public class BTPMessageVerifier implements BMV {
         if (!Arrays.equals(hash(proofContext), proofContextHash)) throw BMVException.unknown("mismatch Hash of NextProofContext");
     }
 
-    private void verifyProof(NetworkTypeSectionDecision decision, Proofs proofs) {
-        byte[] decisionHash = decision.hash();
+    private void verifyProof(NetworkTypeSectionDecision decision, Proofs proofs, BMVProperties bmvProperties) {
         byte[][] sigs = proofs.getProofs();
-        List<EthAddress> verifiedValidator = new ArrayList<>();
-        var bmvProperties = getProperties();
-        var proofContextBytes = bmvProperties.getProofContext();
-        var proofContext = ProofContext.fromBytes(proofContextBytes);
+        var validators = getProofContext().getValidators();
+        var validatorsCnt = validators.length;
+        int numOfSigs = 0;
         for (byte[] sig : sigs) {
-            if (sig == null){
+            if (sig != null) numOfSigs++;
+        }
+        //quorum = validator * 2/3
+        if (numOfSigs * 3 <= validatorsCnt * 2)
+            throw BMVException.unknown("not enough proof parts num of validator : " + validatorsCnt + ", num of proof parts : " + numOfSigs);
+        byte[] decisionHash = decision.hash();
+        var indexes = validatorIndexes.at(bmvProperties.getProofContextHash());
+        boolean[] verified = new boolean[validatorsCnt];
+        for (int i = 0; i < sigs.length; i++) {
+            if (sigs[i] == null) {
                 continue;
             }
-            EthAddress address = recoverAddress(decisionHash, sig);
-            if (!proofContext.isValidator(address)) throw BMVException.unknown("invalid validator : " + address);
-            if (verifiedValidator.contains(address)) throw BMVException.unknown("duplicated validator : " + address);
-            verifiedValidator.add(address);
+            EthAddress address = recoverAddress(decisionHash, sigs[i]);
+            int index;
+            // signatures are placed in the order of validators, fall back to the index for others
+            if (i < validatorsCnt && validators[i].equals(address)) {
+                index = i;
+            } else {
+                Integer idx = indexes.get(address.toBytes());
+                if (idx == null) throw BMVException.unknown("invalid validator : " + address);
+                index = idx;
+            }
+            if (verified[index]) throw BMVException.unknown("duplicated validator : " + address);
+            verified[index] = true;
         }
-        var verified = verifiedValidator.size();
-        var validatorsCnt = proofContext.getValidators().length;
-        //quorum = validator * 2/3
-        if (verified * 3 <= validatorsCnt * 2)
-            throw BMVException.unknown("not enough proof parts num of validator : " + validatorsCnt + ", num of proof parts : " + verified);
     }
 
-    private byte[][] handleMessageProof(MessageProof messageProof, BlockUpdate blockUpdate) {
+    private byte[][] handleMessageProof(MessageProof messageProof, BlockUpdate blockUpdate, BMVCursor cursor) {
         byte[] expectedMessageRoot;
         BigInteger expectedMessageCnt;
-        var bmvProperties = getProperties();
-        if (bmvProperties.getRemainMessageCount().compareTo(BigInteger.ZERO) <= 0)
+        if (cursor.getRemainMessageCount().compareTo(BigInteger.ZERO) <= 0)
             throw BMVException.unknown("remaining message count must greater than zero");
-        MessageProof.ProveResult result = messageProof.proveMessage();
-        if (bmvProperties.getProcessedMessageCount().compareTo(BigInteger.valueOf(result.offset)) != 0)
+        MessageProof.ProveResult result = messageProof.proveMessage(cursor.getLastProofInLeft());
+        if (cursor.getProcessedMessageCount().compareTo(BigInteger.valueOf(result.offset)) != 0)
             throw BMVException.unknown("invalid ProofInLeft.NumberOfLeaf");
         if (blockUpdate != null ) {
             var blockHeader = blockUpdate.getBlockHeader();
@@ -237,9 +335,9 @@ public class BTPMessageVerifier implements BMV {
                 throw BMVException.unknown("ProofInLeft should be empty");
             }
         } else {
-            expectedMessageRoot = bmvProperties.getLastMessagesRoot();
-            expectedMessageCnt = bmvProperties.getLastMessageCount();
-            if (bmvProperties.getLastSequence().subtract(bmvProperties.getLastFirstMessageSN()).intValue() != result.offset) {
+            expectedMessageRoot = cursor.getLastMessagesRoot();
+            expectedMessageCnt = cursor.getLastMessageCount();
+            if (cursor.getLastSequence().subtract(cursor.getLastFirstMessageSN()).intValue() != result.offset) {
                 throw BMVException.unknown("mismatch ProofInLeft");
             }
         }
@@ -254,10 +352,12 @@ public class BTPMessageVerifier implements BMV {
         var msgCnt = messageProof.getMessages().length;
         var remainCnt = result.total - result.offset - msgCnt;
         if (remainCnt == 0) {
-            bmvProperties.setLastMessagesRoot(null);
+            cursor.setLastMessagesRoot(null);
+            cursor.setLastProofInLeft(null);
+        } else {
+            cursor.setLastProofInLeft(result.proofInLeft);
         }
-        bmvProperties.setLastSequence(bmvProperties.getLastSequence().add(BigInteger.valueOf(msgCnt)));
-        propertiesDB.set(bmvProperties);
+        cursor.setLastSequence(cursor.getLastSequence().add(BigInteger.valueOf(msgCnt)));
         return messageProof.getMessages();
     }
 
@@ -276,8 +376,7 @@ public class BTPMessageVerifier implements BMV {
         return new EthAddress(addr);
     }
 
-    private void checkAccessible(BTPAddress curAddr, BTPAddress fromAddress) {
-        BMVProperties properties = getProperties();
+    private void checkAccessible(BMVProperties properties, BTPAddress curAddr, BTPAddress fromAddress) {
         if (!properties.getNetwork().equals(fromAddress.net())) {
             throw BMVException.unknown("invalid prev bmc");
         } else if (!Context.getCaller().equals(properties.getBmc())) {
@@ -33,6 +33,10 @@ public class EthAddress {
         this.data = data;
     }
 
+    public byte[] toBytes() {
+        return data;
+    }
+
     public String toString() {
         return StringUtil.bytesToHex(data);
     }
@@ -16,6 +16,7 @@
 
 package foundation.icon.btp.bmv.btpblock;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.Context;
 import score.ObjectReader;
@@ -46,16 +47,7 @@ public class MessageProof {
             lNodes.add(r.read(ProofNode.class));
         }
         r.end();
-        List<byte[]> messageList = new ArrayList<>();
-        r.beginList();
-        while (r.hasNext()) {
-            messageList.add(r.readByteArray());
-        }
-        byte[][] messages = new byte[messageList.size()][];
-        for (int i = 0; i < messages.length; i++) {
-            messages[i] = messageList.get(i);
-        }
-        r.end();
+        byte[][] messages = Codec.readByteArrays(r);
         List<ProofNode> rNodes = new ArrayList<>();
         r.beginList();
         while (r.hasNext()) {
@@ -71,33 +63,115 @@ public class MessageProof {
         return MessageProof.readObject(reader);
     }
 
+    /**
+     * Computes the root of the message tree without building it.
+     * <p>
+     * The tree is kept as a stack of the left children on its right-most path followed by the last node. Before
+     * a node is appended, the top-most subtree on the path which has the same number of leaves in both sides is
+     * folded into a single entry. The levels and the number of leaves of left children are verified while folding.
+     */
     public ProveResult proveMessage() {
-        Node node = new Node();
-        int left = 0, total = 0;
-        for (ProofNode pn : leftProofNodes) {
+        return proveMessage(null);
+    }
+
+    /**
+     * Computes the root of the message tree like {@link #proveMessage()}, but continues from {@code proofInLeft}
+     * of the previous result if this has no ProofInLeft.
+     */
+    public ProveResult proveMessage(ProofNode[] proofInLeft) {
+        List<ProofNode> lNodes = leftProofNodes;
+        if (proofInLeft != null && lNodes.isEmpty()) {
+            lNodes = List.of(proofInLeft);
+        }
+        int size = lNodes.size() + messages.length + rightProofNodes.size();
+        int[] nums = new int[size];
+        int[] levels = new int[size];
+        byte[][] values = new byte[size][];
+        int top = -1, left = 0, total = 0;
+        for (ProofNode pn : lNodes) {
             var num = pn.getNumOfLeaf();
-            node = node.add(num, pn.getValue());
+            top = push(nums, levels, values, top, total, num, pn.getValue());
             left += num;
+            total += num;
         }
 
         for (byte[] message : messages) {
-            node = node.add(1, BTPMessageVerifier.hash(message));
+            top = push(nums, levels, values, top, total, 1, BTPMessageVerifier.hash(message));
             total++;
         }
+        ProofNode[] nextProofInLeft = new ProofNode[top + 1];
+        for (int i = 0; i <= top; i++) {
+            nextProofInLeft[i] = new ProofNode(nums[i], values[i]);
+        }
 
         for (ProofNode pn : rightProofNodes) {
             var num = pn.getNumOfLeaf();
-            node = node.add(num, pn.getValue());
+            top = push(nums, levels, values, top, total, num, pn.getValue());
             total += num;
         }
-        node.ensureHash(false);
+        if (top < 0) {
+            return new ProveResult(null, 0, 0);
+        }
+        fold(nums, levels, values, 0, top);
+        return new ProveResult(values[0], left, total, nextProofInLeft);
+    }
+
+    private static int push(int[] nums, int[] levels, byte[][] values, int top, int total, int num, byte[] value) {
+        if (num < 1) {
+            throw BMVException.unknown("invalid numOfLeaf : " + num);
+        }
+        for (int i = 0, rest = total; i < top; i++) {
+            rest -= nums[i];
+            if (nums[i] == rest) {
+                top = fold(nums, levels, values, i, top);
+                break;
+            }
+        }
+        top++;
+        nums[top] = num;
+        levels[top] = numberToLevel(num);
+        values[top] = value;
+        return top;
+    }
 
-        total += left;
-        var rootNumOfLeaf = node.getNumOfLeaf();
-        if (total != rootNumOfLeaf)
-            throw BMVException.unknown("total doesn't match total : " + total + ", node : " + rootNumOfLeaf);
-        node.verify();
-        return new ProveResult(node.getValue(), left, total);
+    private static int fold(int[] nums, int[] levels, byte[][] values, int from, int top) {
+        for (int i = top - 1; i >= from; i--) {
+            if (levels[i] < levels[i + 1]) {
+                throw BMVException.unknown("invalid level left : " + levels[i] + " right : " + levels[i + 1]);
+            }
+            var v = 1 << (levels[i] - 1);
+            if (v != nums[i]) {
+                throw BMVException.unknown("invalid numOfLeaf, expected : " + v + ", value : " + nums[i]);
+            }
+            nums[i] += nums[i + 1];
+            levels[i]++;
+            values[i] = concatAndHash(values[i], values[i + 1]);
+        }
+        return from;
+    }
+
+    private static int numberToLevel(int n) {
+        if (n <= 2) return n;
+        int l = 3;
+        for (int i = (n - 1) >> 2; i > 0; i = i >> 1 ) {
+            l++;
+        }
+        return l;
+    }
+
+    private static byte[] concatAndHash(byte[] b1, byte[] b2) {
+        int len = 0, accum = 0;
+        if (b1 != null) len += b1.length;
+        if (b2 != null) len += b2.length;
+        byte[] data = new byte[len];
+        if (b1 != null) {
+            System.arraycopy(b1, 0, data, 0, b1.length);
+            accum += b1.length;
+        }
+        if (b2 != null) {
+            System.arraycopy(b2, 0, data, accum, b2.length);
+        }
+        return BTPMessageVerifier.hash(data);
     }
 
     public void printRightNodes() {
@@ -114,11 +188,18 @@ public class MessageProof {
         final byte[] hash;
         final int offset;
         final int total;
+        // nodes on the left of the messages which follow the proven ones
+        final ProofNode[] proofInLeft;
 
         public ProveResult(byte[] hash, int left, int total) {
+            this(hash, left, total, null);
+        }
+
+        public ProveResult(byte[] hash, int left, int total, ProofNode[] proofInLeft) {
             this.hash = hash;
             this.offset = left;
             this.total = total;
+            this.proofInLeft = proofInLeft;
         }
     }
 }
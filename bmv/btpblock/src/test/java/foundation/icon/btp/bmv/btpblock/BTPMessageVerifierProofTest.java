@@ -0,0 +1,517 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.bmv.btpblock;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+import foundation.icon.btp.lib.BMVStatus;
+import foundation.icon.btp.lib.BTPAddress;
+import foundation.icon.btp.test.BTPIntegrationTest;
+import foundation.icon.icx.KeyWallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import score.Address;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.RevertedException;
+import score.UserRevertedException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies block updates signed by a large synthetic validator set.
+ */
+public class BTPMessageVerifierProofTest extends TestBase {
+    static final ServiceManager sm = getServiceManager();
+    static final Account owner = sm.createAccount();
+    static final String SRC_NETWORK_ID = "0x1.icon";
+    static final int NETWORK_TYPE_ID = 2;
+    static final BigInteger NID = BigInteger.ONE;
+    static final int NUM_VALIDATORS = 100;
+    static final Account bmcAccount = sm.createScoreAccount();
+    static final Account prevAccount = sm.createScoreAccount();
+    static final BTPAddress bmc = new BTPAddress(BTPIntegrationTest.Faker.btpNetwork(),
+            bmcAccount.getAddress().toString());
+    static final BTPAddress prev = new BTPAddress(SRC_NETWORK_ID, prevAccount.getAddress().toString());
+
+    static class Validators {
+        final KeyWallet[] wallets;
+        final byte[] proofContext;
+
+        Validators(int size) throws Exception {
+            wallets = new KeyWallet[size];
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            w.beginList(1);
+            w.beginList(size);
+            for (int i = 0; i < size; i++) {
+                wallets[i] = KeyWallet.create();
+                w.write(address(wallets[i]));
+            }
+            w.end();
+            w.end();
+            proofContext = w.toByteArray();
+        }
+
+        byte[] hash() {
+            return BTPMessageVerifier.hash(proofContext);
+        }
+
+        static byte[] address(KeyWallet wallet) {
+            byte[] publicKey = wallet.getPublicKey().toByteArray();
+            byte[] hashed = BTPMessageVerifier.hash(
+                    Arrays.copyOfRange(publicKey, publicKey.length - 64, publicKey.length));
+            return Arrays.copyOfRange(hashed, 12, 32);
+        }
+    }
+
+    static class State {
+        Validators validators;
+        long height;
+        BigInteger firstMessageSN = BigInteger.ZERO;
+        int messageCount;
+        byte[] lastNetworkSectionHash;
+        BigInteger sequence = BigInteger.ZERO;
+
+        State copy() {
+            State s = new State();
+            s.validators = validators;
+            s.height = height;
+            s.firstMessageSN = firstMessageSN;
+            s.messageCount = messageCount;
+            s.lastNetworkSectionHash = lastNetworkSectionHash;
+            s.sequence = sequence;
+            return s;
+        }
+    }
+
+    Score score;
+    State state;
+
+    static byte[] encodeHeader(long height, byte[] nextProofContextHash, BigInteger updateNumber,
+                               byte[] prev, int messageCount, byte[] messagesRoot, byte[] nextProofContext) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(10);
+        w.write(height);
+        w.write(0);
+        w.write(nextProofContextHash);
+        w.beginList(0);
+        w.end();
+        w.write(NID);
+        w.write(updateNumber);
+        w.writeNullable(prev);
+        w.write(messageCount);
+        w.writeNullable(messagesRoot);
+        w.writeNullable(nextProofContext);
+        w.end();
+        return w.toByteArray();
+    }
+
+    static RelayMessage.TypePrefixedMessage encodeBlockUpdate(byte[] header, byte[][] sigs) {
+        byte[] proofs = null;
+        ByteArrayObjectWriter w;
+        if (sigs != null) {
+            w = Context.newByteArrayObjectWriter("RLPn");
+            w.beginList(1);
+            w.beginList(sigs.length);
+            for (byte[] sig : sigs) {
+                w.writeNullable(sig);
+            }
+            w.end();
+            w.end();
+            proofs = w.toByteArray();
+        }
+        w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(2);
+        w.write(header);
+        w.writeNullable(proofs);
+        w.end();
+        return new RelayMessage.TypePrefixedMessage(RelayMessage.TypePrefixedMessage.BLOCK_UPDATE, w.toByteArray());
+    }
+
+    // message proof of all messages in a block
+    static RelayMessage.TypePrefixedMessage encodeMessageProof(byte[][] messages) {
+        return encodeMessageProof(List.of(), messages, List.of());
+    }
+
+    static RelayMessage.TypePrefixedMessage encodeMessageProof(
+            List<ProofNode> lNodes, byte[][] messages, List<ProofNode> rNodes) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(3);
+        w.beginList(lNodes.size());
+        for (ProofNode node : lNodes) {
+            ProofNode.writeObject(w, node);
+        }
+        w.end();
+        w.beginList(messages.length);
+        for (byte[] message : messages) {
+            w.write(message);
+        }
+        w.end();
+        w.beginList(rNodes.size());
+        for (ProofNode node : rNodes) {
+            ProofNode.writeObject(w, node);
+        }
+        w.end();
+        w.end();
+        return new RelayMessage.TypePrefixedMessage(RelayMessage.TypePrefixedMessage.MESSAGE_PROOF, w.toByteArray());
+    }
+
+    /**
+     * Returns a message proof of messages[start, end), ProofInLeft is omitted if {@code withLeft} is false.
+     */
+    static RelayMessage.TypePrefixedMessage encodeMessageProof(byte[][] messages, int start, int end, boolean withLeft) {
+        byte[][] leaves = new byte[messages.length][];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = BTPMessageVerifier.hash(messages[i]);
+        }
+        List<ProofNode> lNodes = new ArrayList<>();
+        List<ProofNode> rNodes = new ArrayList<>();
+        MessageProofTest.prove(leaves, 0, leaves.length, start, end, lNodes, rNodes);
+        return encodeMessageProof(withLeft ? lNodes : List.of(), Arrays.copyOfRange(messages, start, end), rNodes);
+    }
+
+    static byte[] messagesRoot(byte[][] messages) {
+        if (messages.length == 0) {
+            return null;
+        }
+        return new MessageProof(List.of(), messages, List.of()).proveMessage().hash;
+    }
+
+    static byte[] encodeRelayMessage(RelayMessage.TypePrefixedMessage... typePrefixedMessages) {
+        RelayMessage rm = new RelayMessage();
+        rm.setMessages(typePrefixedMessages);
+        return rm.toBytes();
+    }
+
+    static byte[] decisionHash(long height, byte[] nextProofContextHash, byte[] nsHash) {
+        NetworkTypeSection nts = new NetworkTypeSection(nextProofContextHash, nsHash);
+        return new NetworkTypeSectionDecision(
+                SRC_NETWORK_ID.getBytes(), NETWORK_TYPE_ID, height, 0, nts.hash()).hash();
+    }
+
+    static byte[][] messages(int count) {
+        byte[][] messages = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            messages[i] = ("message" + i).getBytes();
+        }
+        return messages;
+    }
+
+    @BeforeEach
+    void setup() throws Exception {
+        state = new State();
+        state.validators = new Validators(NUM_VALIDATORS);
+        state.height = 10;
+        var updateNumber = BigInteger.ONE;
+        byte[] header = encodeHeader(state.height, state.validators.hash(), updateNumber, null,
+                0, null, state.validators.proofContext);
+        score = sm.deploy(owner, BTPMessageVerifier.class,
+                SRC_NETWORK_ID, NETWORK_TYPE_ID, Address.fromString(bmc.account()), header, BigInteger.ZERO);
+        state.lastNetworkSectionHash = new NetworkSection(NID, updateNumber, null, BigInteger.ZERO, null).hash();
+        assertStatus();
+    }
+
+    /**
+     * Returns a block update following the last one, signed by the wallets at the given indexes.
+     * The block update has no proof if {@code signers} is null, and the next validators are applied with
+     * the update if {@code next} is not null.
+     */
+    RelayMessage.TypePrefixedMessage blockUpdate(KeyWallet[] signers, int[] indexes, Validators next, byte[][] messages) {
+        state.height += 10;
+        state.firstMessageSN = state.firstMessageSN.add(BigInteger.valueOf(state.messageCount));
+        state.messageCount = messages.length;
+        var updateNumber = state.firstMessageSN.shiftLeft(1).add(next != null ? BigInteger.ONE : BigInteger.ZERO);
+        var nextProofContextHash = next != null ? next.hash() : state.validators.hash();
+        var messagesRoot = messagesRoot(messages);
+        byte[] header = encodeHeader(state.height, nextProofContextHash, updateNumber, state.lastNetworkSectionHash,
+                messages.length, messagesRoot, next != null ? next.proofContext : null);
+        byte[] nsHash = new NetworkSection(NID, updateNumber, state.lastNetworkSectionHash,
+                BigInteger.valueOf(messages.length), messagesRoot).hash();
+        byte[][] sigs = null;
+        if (signers != null) {
+            byte[] decision = decisionHash(state.height, nextProofContextHash, nsHash);
+            sigs = new byte[signers.length][];
+            for (int i : indexes) {
+                sigs[i] = signers[i].sign(decision);
+            }
+        }
+        state.lastNetworkSectionHash = nsHash;
+        if (next != null) {
+            state.validators = next;
+        }
+        return encodeBlockUpdate(header, sigs);
+    }
+
+    void relay(KeyWallet[] signers, int[] indexes, Validators next) {
+        relay(() -> new RelayMessage.TypePrefixedMessage[]{blockUpdate(signers, indexes, next, new byte[0][])});
+    }
+
+    /**
+     * Relays the type prefixed messages built by the supplier, the state is restored on failure.
+     */
+    byte[][] relay(Supplier<RelayMessage.TypePrefixedMessage[]> typePrefixedMessages) {
+        State saved = state.copy();
+        byte[][] ret;
+        try {
+            ret = (byte[][]) sm.call(bmcAccount, BigInteger.ZERO, score.getAddress(), "handleRelayMessage",
+                    bmc.toString(), prev.toString(), state.sequence,
+                    encodeRelayMessage(typePrefixedMessages.get()));
+        } catch (RuntimeException e) {
+            state = saved;
+            throw e;
+        }
+        state.sequence = state.sequence.add(BigInteger.valueOf(ret.length));
+        assertStatus();
+        return ret;
+    }
+
+    void assertStatus() {
+        BMVStatus status = (BMVStatus) score.call("getStatus");
+        assertEquals(state.height, status.getHeight());
+        BMVStatusExtra extra = BMVStatusExtra.fromBytes(status.getExtra());
+        assertEquals(BigInteger.ZERO, extra.getSequenceOffset());
+        assertEquals(state.firstMessageSN, extra.getFirstMessageSN());
+        assertEquals(BigInteger.valueOf(state.messageCount), extra.getMessageCount());
+    }
+
+    static int[] range(int from, int to) {
+        int[] ret = new int[to - from];
+        for (int i = from; i < to; i++) {
+            ret[i - from] = i;
+        }
+        return ret;
+    }
+
+    @Test
+    void deployWithoutBlockHeader() throws Exception {
+        // properties are stored with the first block header, so partial ones are not written
+        assertNotNull(sm.deploy(owner, BTPMessageVerifier.class,
+                SRC_NETWORK_ID, NETWORK_TYPE_ID, null, null, BigInteger.ONE));
+    }
+
+    @Test
+    void verifyWithManyValidators() {
+        // quorum of 100 validators is 67
+        relay(state.validators.wallets, range(0, 67), null);
+        relay(state.validators.wallets, range(NUM_VALIDATORS - 67, NUM_VALIDATORS), null);
+        var notEnough = assertThrows(UserRevertedException.class,
+                () -> relay(state.validators.wallets, range(0, 66), null));
+        assertTrue(notEnough.getMessage().contains("not enough proof"));
+    }
+
+    @Test
+    void verifyAfterValidatorsChanged() throws Exception {
+        Validators old = state.validators;
+        Validators next = new Validators(NUM_VALIDATORS);
+        relay(state.validators.wallets, range(0, NUM_VALIDATORS), next);
+        relay(state.validators.wallets, range(0, 67), null);
+
+        var invalid = assertThrows(UserRevertedException.class,
+                () -> relay(old.wallets, range(0, NUM_VALIDATORS), null));
+        assertTrue(invalid.getMessage().contains("invalid validator"));
+    }
+
+    @Test
+    void rejectNonValidator() throws Exception {
+        KeyWallet[] signers = state.validators.wallets.clone();
+        signers[NUM_VALIDATORS / 2] = KeyWallet.create();
+        var invalid = assertThrows(UserRevertedException.class,
+                () -> relay(signers, range(0, NUM_VALIDATORS), null));
+        assertTrue(invalid.getMessage().contains("invalid validator"));
+    }
+
+    @Test
+    void verifyExactQuorum() throws Exception {
+        for (int size : new int[]{3, 4, 99}) {
+            Validators next = new Validators(size);
+            relay(state.validators.wallets, range(0, state.validators.wallets.length), next);
+            KeyWallet[] wallets = next.wallets;
+
+            int quorum = size * 2 / 3 + 1;
+            var notEnough = assertThrows(UserRevertedException.class,
+                    () -> relay(wallets, range(0, quorum - 1), null));
+            assertTrue(notEnough.getMessage().contains("not enough proof"));
+            relay(wallets, range(wallets.length - quorum, wallets.length), null);
+        }
+    }
+
+    @Test
+    void verifyOutOfOrderSignatures() {
+        KeyWallet[] signers = new KeyWallet[NUM_VALIDATORS];
+        for (int i = 0; i < NUM_VALIDATORS; i++) {
+            signers[i] = state.validators.wallets[(i * 7) % NUM_VALIDATORS];
+        }
+        relay(signers, range(0, 67), null);
+
+        // more slots than validators
+        signers = Arrays.copyOf(state.validators.wallets, NUM_VALIDATORS + 1);
+        signers[NUM_VALIDATORS] = signers[0];
+        int[] indexes = range(1, NUM_VALIDATORS + 1);
+        relay(signers, indexes, null);
+    }
+
+    @Test
+    void rejectDuplicatedSignatures() {
+        KeyWallet[] signers = state.validators.wallets.clone();
+        signers[1] = signers[0];
+        var duplicated = assertThrows(UserRevertedException.class,
+                () -> relay(signers, range(0, NUM_VALIDATORS), null));
+        assertTrue(duplicated.getMessage().contains("duplicated validator"));
+
+        // out of order one duplicates the signer of other slot
+        KeyWallet[] shifted = state.validators.wallets.clone();
+        shifted[NUM_VALIDATORS - 1] = shifted[NUM_VALIDATORS / 2];
+        duplicated = assertThrows(UserRevertedException.class,
+                () -> relay(shifted, range(0, NUM_VALIDATORS), null));
+        assertTrue(duplicated.getMessage().contains("duplicated validator"));
+
+        // duplicated signatures are not counted for the quorum
+        KeyWallet[] padded = state.validators.wallets.clone();
+        for (int i = 66; i < 70; i++) {
+            padded[i] = padded[0];
+        }
+        duplicated = assertThrows(UserRevertedException.class,
+                () -> relay(padded, range(0, 70), null));
+        assertTrue(duplicated.getMessage().contains("duplicated validator"));
+    }
+
+    @Test
+    void verifyChainedBlockUpdates() {
+        KeyWallet[] wallets = state.validators.wallets;
+        int[] quorum = range(0, 67);
+        byte[][] messages1 = messages(3);
+        byte[][] messages3 = messages(2);
+        byte[][] ret = relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(null, null, null, messages1),
+                encodeMessageProof(messages1),
+                blockUpdate(null, null, null, new byte[0][]),
+                blockUpdate(wallets, quorum, null, messages3),
+                encodeMessageProof(messages3)
+        });
+        assertEquals(5, ret.length);
+        assertArrayEquals(messages1[0], ret[0]);
+        assertArrayEquals(messages3[1], ret[4]);
+
+        // signed block updates in the middle
+        relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(wallets, quorum, null, new byte[0][]),
+                blockUpdate(null, null, null, new byte[0][]),
+                blockUpdate(wallets, quorum, null, new byte[0][])
+        });
+    }
+
+    @Test
+    void rejectChainedBlockUpdatesWithoutProof() throws Exception {
+        KeyWallet[] wallets = state.validators.wallets;
+        // the last block update requires proof
+        assertThrows(RevertedException.class, () -> relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(null, null, null, new byte[0][]),
+                blockUpdate(null, null, null, new byte[0][])
+        }));
+
+        // network section of the chained one is verified by the following one
+        var invalid = assertThrows(UserRevertedException.class, () -> relay(() -> {
+            var prev = state.lastNetworkSectionHash;
+            blockUpdate(null, null, null, new byte[0][]);
+            var signed = blockUpdate(wallets, range(0, NUM_VALIDATORS), null, new byte[0][]);
+            // the chained one with other messages root
+            var forged = encodeBlockUpdate(encodeHeader(state.height - 10, state.validators.hash(),
+                    state.firstMessageSN.shiftLeft(1), prev, 0, new byte[32], null), null);
+            return new RelayMessage.TypePrefixedMessage[]{forged, signed};
+        }));
+        assertTrue(invalid.getMessage().contains("mismatch networkSectionHash"));
+
+        // proof context can't be changed without proof
+        Validators next = new Validators(NUM_VALIDATORS);
+        var update = assertThrows(UserRevertedException.class, () -> relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(null, null, next, new byte[0][]),
+                blockUpdate(next.wallets, range(0, NUM_VALIDATORS), null, new byte[0][])
+        }));
+        assertTrue(update.getMessage().contains("proof required"));
+
+        relay(wallets, range(0, NUM_VALIDATORS), null);
+    }
+
+    byte[][] relayMessagesInChunks(byte[][] messages, int chunks) {
+        relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(state.validators.wallets, range(0, 67), null, messages)
+        });
+        List<byte[]> ret = new ArrayList<>();
+        int size = messages.length / chunks;
+        for (int i = 0; i < chunks; i++) {
+            int start = i * size;
+            int end = i == chunks - 1 ? messages.length : start + size;
+            // ProofInLeft of the middle one is given as before
+            boolean withLeft = i == chunks / 2;
+            ret.addAll(List.of(relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                    encodeMessageProof(messages, start, end, withLeft)
+            })));
+        }
+        return ret.toArray(new byte[0][]);
+    }
+
+    @Test
+    void resumeMessageProof() throws Exception {
+        byte[][] messages = messages(200);
+        byte[][] expected = null;
+        for (int chunks : new int[]{1, 5, 20}) {
+            setup();
+            byte[][] ret = relayMessagesInChunks(messages, chunks);
+            assertArrayEquals(messages, ret);
+            if (expected != null) {
+                assertArrayEquals(expected, ret);
+            }
+            expected = ret;
+
+            // all messages are consumed, so the next one starts from the next block update
+            byte[][] next = messages(3);
+            relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                    blockUpdate(state.validators.wallets, range(0, 67), null, next),
+                    encodeMessageProof(next, 0, 1, true)
+            });
+            assertArrayEquals(next[1], relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                    encodeMessageProof(next, 1, 3, false)
+            })[0]);
+        }
+    }
+
+    @Test
+    void rejectResumedMessageProofWithGap() {
+        byte[][] messages = messages(20);
+        relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                blockUpdate(state.validators.wallets, range(0, 67), null, messages),
+                encodeMessageProof(messages, 0, 5, true)
+        });
+        // messages skipped
+        var gap = assertThrows(UserRevertedException.class, () -> relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                encodeMessageProof(messages, 6, 20, false)
+        }));
+        assertTrue(gap.getMessage().contains("mismatch"));
+        // resumed ProofInLeft is kept on failure
+        assertEquals(15, relay(() -> new RelayMessage.TypePrefixedMessage[]{
+                encodeMessageProof(messages, 5, 20, false)
+        }).length);
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package foundation.icon.btp.bmv.btpblock;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessageProofTest {
+    static final Random random = new Random(1);
+
+    static byte[][] messages(int n) {
+        byte[][] messages = new byte[n][];
+        for (int i = 0; i < n; i++) {
+            messages[i] = new byte[1 + random.nextInt(64)];
+            random.nextBytes(messages[i]);
+        }
+        return messages;
+    }
+
+    // result of the former tree based implementation
+    static MessageProof.ProveResult proveByNode(List<ProofNode> lNodes, byte[][] messages, List<ProofNode> rNodes) {
+        Node node = new Node();
+        int left = 0, total = 0;
+        for (ProofNode pn : lNodes) {
+            node = node.add(pn.getNumOfLeaf(), pn.getValue());
+            left += pn.getNumOfLeaf();
+        }
+        for (byte[] message : messages) {
+            node = node.add(1, BTPMessageVerifier.hash(message));
+            total++;
+        }
+        for (ProofNode pn : rNodes) {
+            node = node.add(pn.getNumOfLeaf(), pn.getValue());
+            total += pn.getNumOfLeaf();
+        }
+        node.ensureHash(false);
+        total += left;
+        assertEquals(total, node.getNumOfLeaf());
+        node.verify();
+        return new MessageProof.ProveResult(node.getValue(), left, total);
+    }
+
+    static byte[] concatAndHash(byte[] b1, byte[] b2) {
+        byte[] data = new byte[b1.length + b2.length];
+        System.arraycopy(b1, 0, data, 0, b1.length);
+        System.arraycopy(b2, 0, data, b1.length, b2.length);
+        return BTPMessageVerifier.hash(data);
+    }
+
+    // hash of the subtree of leaves[from, from + n)
+    static byte[] hash(byte[][] leaves, int from, int n) {
+        if (n == 1) {
+            return leaves[from];
+        }
+        int half = Integer.highestOneBit(n - 1);
+        return concatAndHash(hash(leaves, from, half), hash(leaves, from + half, n - half));
+    }
+
+    // collects proof nodes of the subtree of leaves[from, from + n) except leaves[start, end)
+    static void prove(byte[][] leaves, int from, int n, int start, int end,
+                      List<ProofNode> lNodes, List<ProofNode> rNodes) {
+        if (from + n <= start) {
+            lNodes.add(new ProofNode(n, hash(leaves, from, n)));
+        } else if (end <= from) {
+            rNodes.add(new ProofNode(n, hash(leaves, from, n)));
+        } else if (n > 1) {
+            int half = Integer.highestOneBit(n - 1);
+            prove(leaves, from, half, start, end, lNodes, rNodes);
+            prove(leaves, from + half, n - half, start, end, lNodes, rNodes);
+        }
+    }
+
+    static void assertProveResult(MessageProof.ProveResult expected, MessageProof.ProveResult actual) {
+        assertArrayEquals(expected.hash, actual.hash);
+        assertEquals(expected.offset, actual.offset);
+        assertEquals(expected.total, actual.total);
+    }
+
+    @Test
+    void proveWindowOfMessages() {
+        for (int n = 1; n <= 300; n += 1 + random.nextInt(5)) {
+            byte[][] messages = messages(n);
+            byte[][] leaves = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                leaves[i] = BTPMessageVerifier.hash(messages[i]);
+            }
+            byte[] root = hash(leaves, 0, n);
+            for (int k = 0; k < 5; k++) {
+                int start = random.nextInt(n);
+                int end = start + 1 + random.nextInt(n - start);
+                List<ProofNode> lNodes = new ArrayList<>();
+                List<ProofNode> rNodes = new ArrayList<>();
+                prove(leaves, 0, n, start, end, lNodes, rNodes);
+                byte[][] window = new byte[end - start][];
+                System.arraycopy(messages, start, window, 0, window.length);
+
+                var result = new MessageProof(lNodes, window, rNodes).proveMessage();
+                assertArrayEquals(root, result.hash);
+                assertEquals(start, result.offset);
+                assertEquals(n, result.total);
+                assertProveResult(proveByNode(lNodes, window, rNodes), result);
+            }
+        }
+    }
+
+    @Test
+    void resumeWithProofInLeft() {
+        for (int n = 2; n <= 200; n += 1 + random.nextInt(7)) {
+            byte[][] messages = messages(n);
+            byte[][] leaves = new byte[n][];
+            for (int i = 0; i < n; i++) {
+                leaves[i] = BTPMessageVerifier.hash(messages[i]);
+            }
+            ProofNode[] proofInLeft = null;
+            for (int start = 0, end; start < n; start = end) {
+                end = start + 1 + random.nextInt(n - start);
+                List<ProofNode> lNodes = new ArrayList<>();
+                List<ProofNode> rNodes = new ArrayList<>();
+                prove(leaves, 0, n, start, end, lNodes, rNodes);
+                byte[][] window = new byte[end - start][];
+                System.arraycopy(messages, start, window, 0, window.length);
+
+                var expected = new MessageProof(lNodes, window, rNodes).proveMessage();
+                var resumed = new MessageProof(List.of(), window, rNodes).proveMessage(proofInLeft);
+                assertProveResult(expected, resumed);
+                proofInLeft = resumed.proofInLeft;
+            }
+        }
+    }
+
+    static List<ProofNode> randomNodes() {
+        List<ProofNode> nodes = new ArrayList<>();
+        for (int i = random.nextInt(4); i > 0; i--) {
+            byte[] value = new byte[32];
+            random.nextBytes(value);
+            int num = random.nextBoolean() ? 1 << random.nextInt(6) : 1 + random.nextInt(40);
+            nodes.add(new ProofNode(num, value));
+        }
+        return nodes;
+    }
+
+    @Test
+    void proveRandomNodes() {
+        int valid = 0;
+        for (int k = 0; k < 2000; k++) {
+            List<ProofNode> lNodes = randomNodes();
+            byte[][] messages = messages(random.nextInt(20));
+            List<ProofNode> rNodes = randomNodes();
+            MessageProof.ProveResult expected;
+            try {
+                expected = proveByNode(lNodes, messages, rNodes);
+            } catch (BMVException e) {
+                assertThrows(BMVException.class,
+                        () -> new MessageProof(lNodes, messages, rNodes).proveMessage());
+                continue;
+            }
+            assertProveResult(expected, new MessageProof(lNodes, messages, rNodes).proveMessage());
+            valid++;
+        }
+        assertTrue(valid > 0);
+    }
+
+    @Test
+    void rejectInvalidNumOfLeaf() {
+        var messages = messages(2);
+        assertThrows(BMVException.class, () -> new MessageProof(
+                List.of(new ProofNode(0, new byte[32])), messages, List.of()).proveMessage());
+        // left node should be a complete subtree
+        assertThrows(BMVException.class, () -> new MessageProof(
+                List.of(new ProofNode(3, new byte[32])), messages, List.of()).proveMessage());
+    }
+}
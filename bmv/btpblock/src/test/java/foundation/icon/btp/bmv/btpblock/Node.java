@@ -16,6 +16,9 @@
 
 package foundation.icon.btp.bmv.btpblock;
 
+/**
+ * Former tree based implementation of {@link MessageProof#proveMessage()}, kept as a reference for tests.
+ */
 public class Node {
     public static final int LEVEL_INIT = 0;
     public static final int LEVEL_LEAF = 1;
@@ -18,8 +18,11 @@ package foundation.icon.btp.bmv.btpblock;
 import foundation.icon.score.util.StringUtil;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 public class RelayMessageTest {
     @Test
@@ -41,4 +44,29 @@ public class RelayMessageTest {
         var fromBytes = RelayMessage.fromBytes(bytes);
         assertArrayEquals(relayMessage.getMessages(), fromBytes.getMessages());
     }
+
+    @Test
+    void chainedBlockUpdatesTest() {
+        var prev = new byte[32];
+        var hash = new byte[32];
+        var chained = BTPMessageVerifierProofTest.encodeBlockUpdate(
+                BTPMessageVerifierProofTest.encodeHeader(10, hash, BigInteger.ZERO, prev, 0, null, null), null);
+        var signed = BTPMessageVerifierProofTest.encodeBlockUpdate(
+                BTPMessageVerifierProofTest.encodeHeader(11, hash, BigInteger.ZERO, hash, 0, null, null),
+                new byte[][]{null, new byte[65]});
+        var bytes = BTPMessageVerifierProofTest.encodeRelayMessage(chained, signed);
+        var messages = RelayMessage.fromBytes(bytes).getMessages();
+        assertEquals(2, messages.length);
+
+        var first = (BlockUpdate) messages[0].getMessage();
+        assertNull(first.getBlockProof());
+        assertEquals(BigInteger.valueOf(10), first.getBlockHeader().getMainHeight());
+        assertArrayEquals(prev, first.getBlockHeader().getPrev());
+
+        var second = (BlockUpdate) messages[1].getMessage();
+        var proofs = Proofs.fromBytes(second.getBlockProof()).getProofs();
+        assertEquals(2, proofs.length);
+        assertNull(proofs[0]);
+        assertArrayEquals(hash, second.getBlockHeader().getPrev());
+    }
 }
@@ -287,9 +287,15 @@ public class BTPMessageVerifier implements BMV {
         var receiptsRoot = receiptRootProof.getLeaf();
         var ethBmc = mpProperties.getEthBmc();
         var messageList = new ArrayList<byte[]>();
-        for (ReceiptProof rp : messageProof.getReceiptProofs()) {
-            logger.println("processMessageProof, ", "mpt prove", ", receiptProof key : ", StringUtil.bytesToHex(rp.getKey()));
-            var value = MerklePatriciaTree.prove(receiptsRoot, rp.getKey(), rp.getProofs());
+        var receiptProofs = messageProof.getReceiptProofs();
+        var keys = new byte[receiptProofs.length][];
+        var proofs = new byte[receiptProofs.length][][];
+        for (int i = 0; i < receiptProofs.length; i++) {
+            logger.println("processMessageProof, ", "mpt prove", ", receiptProof key : ", StringUtil.bytesToHex(receiptProofs[i].getKey()));
+            keys[i] = receiptProofs[i].getKey();
+            proofs[i] = receiptProofs[i].getProofs();
+        }
+        for (byte[] value : MerklePatriciaTree.proveAll(receiptsRoot, keys, proofs)) {
             var receipt = Receipt.fromBytes(value);
             logger.println("processMessageProof, ", "receipt : ", receipt);
             for (Log log : receipt.getLogs()) {
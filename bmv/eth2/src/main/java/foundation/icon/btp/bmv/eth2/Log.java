@@ -16,9 +16,9 @@
 
 package foundation.icon.btp.bmv.eth2;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ObjectReader;
-import scorex.util.ArrayList;
 
 import java.math.BigInteger;
 
@@ -58,15 +58,7 @@ public class Log {
     public static Log readObject(ObjectReader r) {
         r.beginList();
         var address = r.readByteArray();
-        var topicList = new ArrayList<byte[]>();
-        r.beginList();
-        while(r.hasNext())
-            topicList.add(r.readByteArray());
-        r.end();
-        var topicLength = topicList.size();
-        var topics = new byte[topicLength][];
-        for (int i = 0; i < topicLength; i++)
-            topics[i] = topicList.get(i);
+        var topics = Codec.readByteArrays(r);
         var data = r.readByteArray();
         r.end();
         return new Log(address, topics, data);
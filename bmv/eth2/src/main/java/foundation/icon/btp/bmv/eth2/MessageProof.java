@@ -15,6 +15,7 @@
  */
 package foundation.icon.btp.bmv.eth2;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.Context;
 import score.ObjectReader;
@@ -67,6 +68,33 @@ public class MessageProof {
         return MessageProof.readObject(reader);
     }
 
+    /**
+     * Reads the compact form, [slot, receiptsRootProof, [node...], [[key, [index of node...]]...]],
+     * which carries the proof nodes shared by the receipt proofs only once.
+     */
+    public static MessageProof readCompactObject(ObjectReader r) {
+        r.beginList();
+        var slot = r.readBigInteger();
+        var proof = r.read(Proof.class);
+        var nodes = Codec.readByteArrays(r);
+        var receiptsProofList = new ArrayList<ReceiptProof>();
+        r.beginList();
+        while(r.hasNext())
+            receiptsProofList.add(ReceiptProof.readCompactObject(r, nodes));
+        r.end();
+        var receiptsProofLen = receiptsProofList.size();
+        var receiptsProofs = new ReceiptProof[receiptsProofLen];
+        for (int i = 0; i < receiptsProofLen; i++)
+            receiptsProofs[i] = receiptsProofList.get(i);
+        r.end();
+        return new MessageProof(slot, proof, receiptsProofs);
+    }
+
+    public static MessageProof fromCompactBytes(byte[] bytes) {
+        ObjectReader reader = Context.newByteArrayObjectReader("RLPn", bytes);
+        return MessageProof.readCompactObject(reader);
+    }
+
     @Override
     public String toString() {
         return "MessageProof{" +
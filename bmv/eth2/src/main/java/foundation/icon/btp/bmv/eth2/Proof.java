@@ -16,9 +16,9 @@
 
 package foundation.icon.btp.bmv.eth2;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ObjectReader;
-import scorex.util.ArrayList;
 
 import java.math.BigInteger;
 
@@ -49,15 +49,7 @@ public class Proof {
         r.beginList();
         var index = r.readBigInteger();
         var leaf = r.readByteArray();
-        var hashList = new ArrayList<byte[]>();
-        r.beginList();
-        while(r.hasNext())
-            hashList.add(r.readByteArray());
-        r.end();
-        var hashesLength = hashList.size();
-        var hashes = new byte[hashesLength][];
-        for (int i = 0; i < hashesLength; i++)
-            hashes[i] = hashList.get(i);
+        var hashes = Codec.readByteArrays(r);
         r.end();
         return new Proof(index, leaf, hashes);
     }
@@ -15,6 +15,7 @@
  */
 package foundation.icon.btp.bmv.eth2;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
@@ -26,10 +27,18 @@ import java.util.List;
 public class ReceiptProof {
     private final byte[] key;
     private final byte[] proof;
+    private final byte[][] proofs;
 
     public ReceiptProof(byte[] key, byte[] proof) {
         this.key = key;
         this.proof = proof;
+        this.proofs = null;
+    }
+
+    public ReceiptProof(byte[] key, byte[][] proofs) {
+        this.key = key;
+        this.proof = null;
+        this.proofs = proofs;
     }
 
     byte[] getKey() {
@@ -37,6 +46,9 @@ public class ReceiptProof {
     }
 
     public byte[][] getProofs() {
+        if (proofs != null) {
+            return proofs;
+        }
         ObjectReader r = Context.newByteArrayObjectReader("RLPn", proof);
         r.beginList();
         byte[][] proofs;
@@ -71,11 +83,25 @@ public class ReceiptProof {
         return new ReceiptProof(key, proof);
     }
 
+    public static ReceiptProof readCompactObject(ObjectReader r, byte[][] nodes) {
+        r.beginList();
+        var key = r.readByteArray();
+        var indexes = Codec.readInts(r);
+        r.end();
+        var proofs = new byte[indexes.length][];
+        for (int i = 0; i < indexes.length; i++) {
+            if (indexes[i] < 0 || indexes[i] >= nodes.length)
+                throw BMVException.unknown("invalid proof node index");
+            proofs[i] = nodes[indexes[i]];
+        }
+        return new ReceiptProof(key, proofs);
+    }
+
     @Override
     public String toString() {
         return "ReceiptProof{" +
                 "key=" + StringUtil.toString(key) +
-                ", proof=" + StringUtil.toString(proof) +
+                ", proof=" + (proofs != null ? StringUtil.toString(proofs) : StringUtil.toString(proof)) +
                 '}';
     }
 }
@@ -16,10 +16,10 @@
 package foundation.icon.btp.bmv.eth2;
 
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
 
 public class SyncCommittee {
     private final BlsPublicKeys blsPublicKeys;
@@ -102,23 +102,11 @@ public class SyncCommittee {
         }
 
         public static BlsPublicKeys readObject(ObjectReader r) {
-            r.beginList();
-            var blsPubKeyList = new ArrayList<byte[]>();
-            while(r.hasNext())
-                blsPubKeyList.add(r.readByteArray());
-            var pubKeyLen = blsPubKeyList.size();
-            var pubKeys = new byte[pubKeyLen][];
-            for (int i = 0; i < pubKeyLen; i++)
-                pubKeys[i] = blsPubKeyList.get(i);
-            r.end();
-            return new BlsPublicKeys(pubKeys);
+            return new BlsPublicKeys(Codec.readByteArrays(r));
         }
 
         public static void writeObject(ObjectWriter w, BlsPublicKeys publicKeys) {
-            w.beginList(publicKeys.blsPublicKeys.length);
-            for (byte[] publicKey: publicKeys.blsPublicKeys)
-                w.write(publicKey);
-            w.end();
+            Codec.writeByteArrays(w, publicKeys.blsPublicKeys);
         }
     }
 }
@@ -0,0 +1,216 @@
+package foundation.icon.btp.bmv.eth2;
+
+import foundation.icon.btp.lib.MerklePatriciaTree;
+import foundation.icon.score.util.StringUtil;
+import org.junit.jupiter.api.Test;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MessageProofTest {
+    private static final DataSource data = DataSource.loadDataSource("historicalRoot.json");
+
+    private static byte[] messageProofPayload() {
+        for (DataSource.Case c : data.getCases()) {
+            for (DataSource.Case.Phase p : c.getPhases()) {
+                ObjectReader r = Context.newByteArrayObjectReader("RLPn", StringUtil.hexToBytes(p.getInput()));
+                r.beginList();
+                r.beginList();
+                while (r.hasNext()) {
+                    r.beginList();
+                    int type = r.readInt();
+                    byte[] payload = r.readByteArray();
+                    r.end();
+                    if (type == RelayMessage.TypePrefixedMessage.MESSAGE_PROOF) {
+                        return payload;
+                    }
+                }
+                r.end();
+                r.end();
+            }
+        }
+        throw new IllegalStateException("no message proof in fixture");
+    }
+
+    private static void writeProof(ByteArrayObjectWriter w, Proof proof) {
+        w.beginList(3);
+        w.write(proof.getIndex());
+        w.write(proof.getLeaf());
+        w.beginList(proof.getHashes().length);
+        for (byte[] hash : proof.getHashes()) {
+            w.write(hash);
+        }
+        w.end();
+        w.end();
+    }
+
+    // re-encodes the nodes in the legacy form, a list of decoded nodes
+    private static byte[] encodeNodes(byte[][] nodes) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(nodes.length);
+        for (byte[] node : nodes) {
+            List<byte[]> items = new ArrayList<>();
+            ObjectReader r = Context.newByteArrayObjectReader("RLPn", node);
+            r.beginList();
+            while (r.hasNext()) {
+                items.add(r.readByteArray());
+            }
+            r.end();
+            w.beginList(items.size());
+            for (byte[] item : items) {
+                w.write(item);
+            }
+            w.end();
+        }
+        w.end();
+        return w.toByteArray();
+    }
+
+    static byte[] encode(MessageProof mp, List<ReceiptProof> rps) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(3);
+        w.write(mp.getSlot());
+        writeProof(w, mp.getReceiptsRootProof());
+        w.beginList(rps.size());
+        for (ReceiptProof rp : rps) {
+            w.beginList(2);
+            w.write(rp.getKey());
+            w.write(encodeNodes(rp.getProofs()));
+            w.end();
+        }
+        w.end();
+        w.end();
+        return w.toByteArray();
+    }
+
+    static byte[] encodeCompact(MessageProof mp, List<ReceiptProof> rps) {
+        List<byte[]> nodes = new ArrayList<>();
+        Map<String, Integer> indexes = new HashMap<>();
+        for (ReceiptProof rp : rps) {
+            for (byte[] node : rp.getProofs()) {
+                String key = StringUtil.bytesToHex(node);
+                if (!indexes.containsKey(key)) {
+                    indexes.put(key, nodes.size());
+                    nodes.add(node);
+                }
+            }
+        }
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(4);
+        w.write(mp.getSlot());
+        writeProof(w, mp.getReceiptsRootProof());
+        w.beginList(nodes.size());
+        for (byte[] node : nodes) {
+            w.write(node);
+        }
+        w.end();
+        w.beginList(rps.size());
+        for (ReceiptProof rp : rps) {
+            byte[][] proofs = rp.getProofs();
+            w.beginList(2);
+            w.write(rp.getKey());
+            w.beginList(proofs.length);
+            for (byte[] node : proofs) {
+                w.write(indexes.get(StringUtil.bytesToHex(node)));
+            }
+            w.end();
+            w.end();
+        }
+        w.end();
+        w.end();
+        return w.toByteArray();
+    }
+
+    private static void assertMessageProofEquals(MessageProof expected, MessageProof actual) {
+        assertEquals(expected.getSlot(), actual.getSlot());
+        assertArrayEquals(expected.getReceiptsRootProof().getLeaf(), actual.getReceiptsRootProof().getLeaf());
+        assertEquals(expected.getReceiptProofs().length, actual.getReceiptProofs().length);
+        for (int i = 0; i < expected.getReceiptProofs().length; i++) {
+            ReceiptProof e = expected.getReceiptProofs()[i];
+            ReceiptProof a = actual.getReceiptProofs()[i];
+            assertArrayEquals(e.getKey(), a.getKey());
+            assertArrayEquals(e.getProofs(), a.getProofs());
+        }
+    }
+
+    private static byte[][] prove(MessageProof mp) {
+        ReceiptProof[] rps = mp.getReceiptProofs();
+        byte[][] keys = new byte[rps.length][];
+        byte[][][] proofs = new byte[rps.length][][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = rps[i].getKey();
+            proofs[i] = rps[i].getProofs();
+        }
+        return MerklePatriciaTree.proveAll(mp.getReceiptsRootProof().getLeaf(), keys, proofs);
+    }
+
+    @Test
+    void decodeBothFormats() {
+        byte[] payload = messageProofPayload();
+        MessageProof mp = MessageProof.fromBytes(payload);
+        assertArrayEquals(payload, encode(mp, List.of(mp.getReceiptProofs())));
+
+        byte[] compact = encodeCompact(mp, List.of(mp.getReceiptProofs()));
+        MessageProof compactProof = MessageProof.fromCompactBytes(compact);
+        assertMessageProofEquals(mp, compactProof);
+        assertArrayEquals(prove(mp), prove(compactProof));
+
+        Object msg = new RelayMessage.TypePrefixedMessage(
+                RelayMessage.TypePrefixedMessage.COMPACT_MESSAGE_PROOF, compact).getMessage();
+        assertTrue(msg instanceof MessageProof);
+        assertMessageProofEquals(mp, (MessageProof) msg);
+    }
+
+    @Test
+    void compactFormatWithReceiptsOfSameBlock() {
+        MessageProof mp = MessageProof.fromBytes(messageProofPayload());
+
+        List<ReceiptProof> rps = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            rps.addAll(List.of(mp.getReceiptProofs()));
+        }
+        byte[] full = encode(mp, rps);
+        byte[] compact = encodeCompact(mp, rps);
+        assertTrue(compact.length < full.length,
+                "compact:" + compact.length + " full:" + full.length);
+
+        MessageProof fullProof = MessageProof.fromBytes(full);
+        MessageProof compactProof = MessageProof.fromCompactBytes(compact);
+        assertMessageProofEquals(fullProof, compactProof);
+        assertArrayEquals(prove(fullProof), prove(compactProof));
+
+        // nodes are decoded once and shared by the receipt proofs
+        ReceiptProof[] shared = compactProof.getReceiptProofs();
+        assertSame(shared[0].getProofs()[0], shared[mp.getReceiptProofs().length].getProofs()[0]);
+    }
+
+    @Test
+    void compactFormatWithInvalidIndex() {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(4);
+        w.write(0);
+        writeProof(w, new Proof(BigInteger.ZERO, new byte[32], new byte[0][]));
+        w.beginList(1);
+        w.write(new byte[]{0x01});
+        w.end();
+        w.beginList(1);
+        w.beginList(2);
+        w.write(new byte[]{(byte) 0x80});
+        w.beginList(1);
+        w.write(1);
+        w.end();
+        w.end();
+        w.end();
+        w.end();
+        byte[] invalid = w.toByteArray();
+        assertThrows(BMVException.class, () -> MessageProof.fromCompactBytes(invalid));
+    }
+}
@@ -17,20 +17,17 @@
 package foundation.icon.btp.bmv.icon;
 
 import foundation.icon.btp.lib.MerkleTreeAccumulator;
+import foundation.icon.score.util.StringUtil;
 import score.*;
 
 public class BMVProperties {
-    public static final BMVProperties DEFAULT;
-
-    static {
-        DEFAULT = new BMVProperties();
-    }
-
     private Address bmc;
     private String net;
     private long lastHeight;
     private Validators validators;
+    // mta of previous versions, it's stored apart from the properties
     private MerkleTreeAccumulator mta;
+    private byte[] validatorsHash;
 
     public Address getBmc() {
         return bmc;
@@ -64,6 +61,14 @@ public class BMVProperties {
         this.validators = validators;
     }
 
+    public byte[] getValidatorsHash() {
+        return validatorsHash;
+    }
+
+    public void setValidatorsHash(byte[] validatorsHash) {
+        this.validatorsHash = validatorsHash;
+    }
+
     public MerkleTreeAccumulator getMta() {
         return mta;
     }
@@ -80,6 +85,7 @@ public class BMVProperties {
         sb.append(", lastHeight=").append(lastHeight);
         sb.append(", validators=").append(validators);
         sb.append(", mta=").append(mta);
+        sb.append(", validatorsHash=").append(StringUtil.bytesToHex(validatorsHash));
         sb.append('}');
         return sb.toString();
     }
@@ -96,12 +102,15 @@ public class BMVProperties {
         obj.setLastHeight(reader.readLong());
         obj.setValidators(reader.readNullable(Validators.class));
         obj.setMta(reader.readNullable(MerkleTreeAccumulator.class));
+        if (reader.hasNext()) {
+            obj.setValidatorsHash(reader.readNullable(byte[].class));
+        }
         reader.end();
         return obj;
     }
 
     public void writeObject(ObjectWriter writer) {
-        writer.beginList(5);
+        writer.beginList(6);
         writer.writeNullable(this.getBmc());
         writer.writeNullable(this.getNet());
         writer.write(this.getLastHeight());
@@ -109,6 +118,7 @@ public class BMVProperties {
         writer.writeNullable(validators);
         MerkleTreeAccumulator mta = this.getMta();
         writer.writeNullable(mta);
+        writer.writeNullable(this.getValidatorsHash());
         writer.end();
     }
 
@@ -25,8 +25,10 @@ import foundation.icon.btp.lib.MerkleTreeAccumulator;
 import foundation.icon.score.util.Logger;
 import foundation.icon.score.util.StringUtil;
 import score.Address;
+import score.BranchDB;
 import score.ByteArrayObjectWriter;
 import score.Context;
+import score.DictDB;
 import score.VarDB;
 import score.annotation.External;
 import scorex.util.ArrayList;
@@ -40,6 +42,12 @@ public class BTPMessageVerifier implements BMV {
     private static final String SHA3_256 = "sha3-256";
 
     private final VarDB<BMVProperties> properties = Context.newVarDB("properties", BMVProperties.class);
+    // index of validator in the validators of the hash
+    private final BranchDB<byte[], DictDB<Address, Integer>> validatorIndexes =
+            Context.newBranchDB("validatorIndexes", Integer.class);
+    // mta is stored without roots, the root at index i is stored in the slot i
+    private final VarDB<MerkleTreeAccumulator> mtaDB = Context.newVarDB("mta", MerkleTreeAccumulator.class);
+    private final DictDB<Integer, byte[]> mtaRoots = Context.newDictDB("mtaRoots", byte[].class);
 
     public BTPMessageVerifier(Address _bmc, String _net, String _validators, byte[] _header) {
         BMVProperties properties = getProperties();
@@ -47,14 +55,19 @@ public class BTPMessageVerifier implements BMV {
         properties.setNet(_net);
         Validators validators = Validators.fromString(_validators);
         BlockHeader header = BlockHeader.fromBytes(_header);
-        properties.setValidators(validators);
+        setValidators(properties, validators, hash(validators.toBytes()));
         if (properties.getLastHeight() == 0) {
             properties.setLastHeight(header.getHeight());
         }
-        if (properties.getMta() == null) {
-            MerkleTreeAccumulator mta = new MerkleTreeAccumulator(header.getHeight());
+        MerkleTreeAccumulator mta = properties.getMta();
+        if (mta != null) {
+            // previous versions keep the mta in the properties
+            setMTA(mta, null);
+            properties.setMta(null);
+        } else if (mtaDB.get() == null) {
+            mta = new MerkleTreeAccumulator(header.getHeight());
             mta.add(hash(header.toBytes()));
-            properties.setMta(mta);
+            setMTA(mta, null);
         }
         setProperties(properties);
     }
@@ -69,34 +82,92 @@ public class BTPMessageVerifier implements BMV {
     }
 
     public BMVProperties getProperties() {
-        return properties.getOrDefault(BMVProperties.DEFAULT);
+        BMVProperties properties = this.properties.get();
+        return properties == null ? new BMVProperties() : properties;
     }
 
     public void setProperties(BMVProperties properties) {
         this.properties.set(properties);
     }
 
+    /**
+     * Returns the mta without roots, use {@link #loadRoots} to add blocks to it.
+     */
+    private MerkleTreeAccumulator getMTA() {
+        return mtaDB.get();
+    }
+
+    /**
+     * Loads roots of the mta from the slots and returns a copy of them for {@link #setMTA}.
+     */
+    private byte[][] loadRoots(MerkleTreeAccumulator mta) {
+        // roots[i] exists if the bit i of the number of blocks is set
+        int size = 64 - Long.numberOfLeadingZeros(mta.getHeight() - mta.getOffset());
+        byte[][] roots = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            roots[i] = mtaRoots.get(i);
+        }
+        mta.setRoots(roots);
+        return roots.clone();
+    }
+
+    /**
+     * Stores the mta, roots are written to the slots only if they differ from the loaded ones.
+     */
+    private void setMTA(MerkleTreeAccumulator mta, byte[][] loadedRoots) {
+        byte[][] roots = mta.getRoots();
+        int size = roots == null ? 0 : roots.length;
+        int loadedSize = loadedRoots == null ? 0 : loadedRoots.length;
+        for (int i = 0; i < size; i++) {
+            if (i >= loadedSize || !Arrays.equals(roots[i], loadedRoots[i])) {
+                mtaRoots.set(i, roots[i]);
+            }
+        }
+        for (int i = size; i < loadedSize; i++) {
+            mtaRoots.set(i, null);
+        }
+        mta.setRoots(null);
+        mtaDB.set(mta);
+    }
+
+    private void setValidators(BMVProperties properties, Validators validators, byte[] validatorsHash) {
+        byte[] currentHash = properties.getValidatorsHash();
+        if (currentHash != null && !Arrays.equals(currentHash, validatorsHash)) {
+            DictDB<Address, Integer> indexes = validatorIndexes.at(currentHash);
+            for (Address address : properties.getValidators().getAddresses()) {
+                indexes.set(address, null);
+            }
+        }
+        DictDB<Address, Integer> indexes = validatorIndexes.at(validatorsHash);
+        Address[] addresses = validators.getAddresses();
+        for (int i = 0; i < addresses.length; i++) {
+            indexes.set(addresses[i], i);
+        }
+        properties.setValidators(validators);
+        properties.setValidatorsHash(validatorsHash);
+    }
+
     @External
     public byte[][] handleRelayMessage(String _bmc, String _prev, BigInteger _seq, byte[] _msg) {
         BTPAddress curAddr = BTPAddress.valueOf(_bmc);
         BTPAddress prevAddr = BTPAddress.valueOf(_prev);
-        checkAccessible(curAddr, prevAddr);
+        BMVProperties properties = getProperties();
+        checkAccessible(properties, curAddr, prevAddr);
+        Address source = toSource(prevAddr);
 
         RelayMessage relayMessage = RelayMessage.fromBytes(_msg);
         BlockUpdate[] blockUpdates = relayMessage.getBlockUpdates();
         BlockProof blockProof = relayMessage.getBlockProof();
         ReceiptProof[] receiptProofs = relayMessage.getReceiptProofs();
         BlockHeader lastBlockHeader;
-        BMVProperties properties = getProperties();
-        MerkleTreeAccumulator mta = properties.getMta();
+        MerkleTreeAccumulator mta = getMTA();
         if (blockUpdates != null && blockUpdates.length > 0) {
-            Validators validators = verifyBlockUpdates(blockUpdates, mta, properties.getValidators());
-            properties.setMta(mta);
-            if (validators != null) {
-                properties.setValidators(validators);
-            }
+            byte[][] roots = loadRoots(mta);
+            verifyBlockUpdates(blockUpdates, mta, properties);
+            setMTA(mta, roots);
             lastBlockHeader = blockUpdates[blockUpdates.length - 1].getBlockHeader();
         } else if (blockProof != null) {
+            // only the root for the witness is read, and the mta is not changed
             verifyBlockProof(blockProof, mta);
             lastBlockHeader = blockProof.getBlockHeader();
         } else {
@@ -111,34 +182,26 @@ public class BTPMessageVerifier implements BMV {
                 throw BMVException.unknown("invalid RelayMessage, BlockHeader has not receiptHash");
             }
             byte[] receiptHash = lastBlockHeader.getResult().getReceiptHash();
-            for(ReceiptProof receiptProof : receiptProofs) {
-                Receipt receipt = proveReceiptProof(receiptProof, receiptHash);
-                for(EventLog eventLog : receipt.getEventLogs()) {
-                    if(!(prevAddr.account().equals(eventLog.getAddress().toString()))) {
-                        continue;
-                    }
-                    MessageEvent msgEvent = eventLog.toMessageEvent();
-                    if (msgEvent != null && msgEvent.getNext().equals(_bmc)) {
-                        int compare = msgEvent.getSeq().compareTo(next_seq);
-                        if (compare > 0) {
-                            throw BMVException.invalidSequenceHigher(
-                                    "invalid sequence "+msgEvent.getSeq() + " expected:"+next_seq);
-                        } else if (compare < 0) {
-                            throw BMVException.invalidSequence(
-                                    "invalid sequence "+msgEvent.getSeq() + " expected:"+next_seq);
-                        } else {
-                            msgs.add(msgEvent.getMsg());
-                            next_seq = next_seq.add(BigInteger.ONE);
-                        }
+            for (MessageEvent msgEvent : proveMessageEvents(receiptProofs, receiptHash, source)) {
+                if (msgEvent.getNext().equals(_bmc)) {
+                    int compare = msgEvent.getSeq().compareTo(next_seq);
+                    if (compare > 0) {
+                        throw BMVException.invalidSequenceHigher(
+                                "invalid sequence "+msgEvent.getSeq() + " expected:"+next_seq);
+                    } else if (compare < 0) {
+                        throw BMVException.invalidSequence(
+                                "invalid sequence "+msgEvent.getSeq() + " expected:"+next_seq);
+                    } else {
+                        msgs.add(msgEvent.getMsg());
+                        next_seq = next_seq.add(BigInteger.ONE);
                     }
                 }
             }
             if (msgs.size() > 0) {
                 properties.setLastHeight(lastBlockHeader.getHeight());
                 ret = new byte[msgs.size()][];
-                int i = 0;
-                for (byte[] msg : msgs) {
-                    ret[i] = msg;
+                for (int i = 0; i < ret.length; i++) {
+                    ret[i] = msgs.get(i);
                 }
             }
         }
@@ -155,48 +218,62 @@ public class BTPMessageVerifier implements BMV {
         return writer.toByteArray();
     }
 
-    private Receipt proveReceiptProof(ReceiptProof receiptProof, byte[] receiptHash) {
+    private static byte[][] proveMPTProofs(MPTProof[] mptProofs, byte[] rootHash) {
+        byte[][] keys = new byte[mptProofs.length][];
+        byte[][][] proofs = new byte[mptProofs.length][][];
+        for (int i = 0; i < mptProofs.length; i++) {
+            keys[i] = encodeKey(mptProofs[i].getIndex());
+            proofs[i] = mptProofs[i].getProofs().getProofs();
+        }
+        return MerklePatriciaTree.proveAll(SHA3_256, rootHash, keys, proofs);
+    }
+
+    /**
+     * Returns Message events emitted by the source in the receipts. Event logs of the event proofs are
+     * checked on the encoded bytes, so that only Message events of the source are decoded.
+     */
+    private List<MessageEvent> proveMessageEvents(ReceiptProof[] receiptProofs, byte[] receiptHash, Address source) {
+        byte[] encodedSource = encodeKey(source);
+        List<MessageEvent> msgEvents = new ArrayList<>();
         try {
-            byte[] serializedReceipt = MerklePatriciaTree.prove(
-                    SHA3_256,
-                    receiptHash,
-                    encodeKey(receiptProof.getIndex()),
-                    receiptProof.getProofs().getProofs());
-            Receipt receipt = Receipt.fromBytes(serializedReceipt);
-            byte[] eventLogsHash = receipt.getEventLogsHash();
-            MPTProof[] eventProofs = receiptProof.getEventProofs();
-            if (eventProofs != null) {
-                EventLog[] eventLogs = new EventLog[eventProofs.length];
-                int i=0;
-                for(MPTProof eventProof : eventProofs){
-                    byte[] serializedEventLog = MerklePatriciaTree.prove(
-                            SHA3_256,
-                            eventLogsHash,
-                            encodeKey(eventProof.getIndex()),
-                            eventProof.getProofs().getProofs());
-                    EventLog eventLog = EventLog.fromBytes(serializedEventLog);
-                    eventLogs[i++] = eventLog;
+            byte[][] serializedReceipts = proveMPTProofs(receiptProofs, receiptHash);
+            for (int i = 0; i < receiptProofs.length; i++) {
+                Receipt receipt = Receipt.fromBytes(serializedReceipts[i]);
+                MPTProof[] eventProofs = receiptProofs[i].getEventProofs();
+                if (eventProofs != null) {
+                    byte[][] serializedEventLogs = proveMPTProofs(eventProofs, receipt.getEventLogsHash());
+                    for (byte[] serializedEventLog : serializedEventLogs) {
+                        if (EventLog.isMessageEvent(serializedEventLog, encodedSource)) {
+                            msgEvents.add(EventLog.fromBytes(serializedEventLog).toMessageEvent());
+                        }
+                    }
+                } else {
+                    for (EventLog eventLog : receipt.getEventLogs()) {
+                        if (source.equals(eventLog.getAddress())) {
+                            MessageEvent msgEvent = eventLog.toMessageEvent();
+                            if (msgEvent != null) {
+                                msgEvents.add(msgEvent);
+                            }
+                        }
+                    }
                 }
-                receipt.setEventLogs(eventLogs);
             }
-            return receipt;
+            return msgEvents;
         } catch (MerklePatriciaTree.MPTException e) {
             throw BMVException.invalidMPT(e.getMessage());
         }
     }
 
-    private Validators verifyBlockUpdates(BlockUpdate[] blockUpdates, MerkleTreeAccumulator mta, Validators validators) {
-        boolean isValidatorsUpdate = false;
-        byte[] validatorHash = hash(validators.toBytes());
+    private void verifyBlockUpdates(BlockUpdate[] blockUpdates, MerkleTreeAccumulator mta, BMVProperties properties) {
         for(BlockUpdate blockUpdate : blockUpdates) {
             BlockHeader blockHeader = blockUpdate.getBlockHeader();
             long blockHeight = blockHeader.getHeight();
             long nextHeight = mta.getHeight();
             if (nextHeight == blockHeight) {
                 byte[] blockHash = hash(blockHeader.toBytes());
-                verifyVotes(blockUpdate.getVotes(), blockHeight, blockHash, validators);
+                verifyVotes(blockUpdate.getVotes(), blockHeight, blockHash, properties);
                 byte[] nextValidatorHash = blockHeader.getNextValidatorHash();
-                if (!(Arrays.equals(validatorHash, nextValidatorHash))) {
+                if (!(Arrays.equals(properties.getValidatorsHash(), nextValidatorHash))) {
                     Validators nextValidators = blockUpdate.getNextValidators();
                     if (nextValidators == null) {
                         throw BMVException.invalidBlockUpdate("not exists next validator");
@@ -204,9 +281,7 @@ public class BTPMessageVerifier implements BMV {
                     if (!(Arrays.equals(hash(nextValidators.toBytes()), nextValidatorHash))) {
                         throw BMVException.invalidBlockUpdate("invalid next validator hash");
                     }
-                    validators = nextValidators;
-                    validatorHash = nextValidatorHash;
-                    isValidatorsUpdate = true;
+                    setValidators(properties, nextValidators, nextValidatorHash);
                 }
                 mta.add(blockHash);
             } else if (nextHeight < blockHeight) {
@@ -217,7 +292,6 @@ public class BTPMessageVerifier implements BMV {
                         "invalid blockUpdate height "+blockHeight+" expected:"+nextHeight);
             }
         }
-        return isValidatorsUpdate ? validators : null;
     }
 
     private void verifyBlockProof(BlockProof blockProof, MerkleTreeAccumulator mta) {
@@ -233,7 +307,9 @@ public class BTPMessageVerifier implements BMV {
         }
         byte[] blockHash = hash(blockHeader.toBytes());
         try {
-            mta.verify(blockWitness.getWitness(), blockHash, blockHeight, blockWitness.getHeight());
+            byte[][] witness = blockWitness.getWitness();
+            int rootIdx = mta.getRootIdx(witness, blockHeight, blockWitness.getHeight());
+            mta.verify(witness, blockHash, blockHeight, rootIdx, mtaRoots.get(rootIdx));
         } catch (MTAException.InvalidWitnessOldException e) {
             throw BMVException.invalidBlockWitnessOld(e.getMessage());
         } catch (MTAException e) {
@@ -242,7 +318,7 @@ public class BTPMessageVerifier implements BMV {
         }
     }
 
-    private void verifyVotes(Votes votes, long blockHeight, byte[] blockHash, Validators validators) {
+    private void verifyVotes(Votes votes, long blockHeight, byte[] blockHash, BMVProperties properties) {
         if (votes == null) {
             logger.println("verifyVotes","invalidBlockUpdate", "not exists votes");
             throw BMVException.invalidBlockUpdate("not exists votes");
@@ -253,34 +329,39 @@ public class BTPMessageVerifier implements BMV {
         voteMessage.setVoteType(VoteMessage.VOTE_TYPE_PRECOMMIT);
         voteMessage.setBlockId(blockHash);
         voteMessage.setPartSetId(votes.getPartSetId());
-        List<Address> addresses = new ArrayList<>();
+        // votes for the block differ only in timestamp
+        byte[] prefix = voteMessage.toPrefixBytes();
+        DictDB<Address, Integer> indexes = validatorIndexes.at(properties.getValidatorsHash());
+        int validatorsCnt = properties.getValidators().getAddresses().length;
+        int quorum = validatorsCnt * 2 / 3 + 1;
+        boolean[] voted = new boolean[validatorsCnt];
+        int count = 0;
         for(Vote vote : votes.getItems()) {
-            voteMessage.setTimestamp(vote.getTimestamp());
-            byte[] voteMessageHash = hash(voteMessage.toBytes());
+            byte[] voteMessageHash = hash(VoteMessage.toBytes(prefix, vote.getTimestamp()));
             Address address = recoverAddress(voteMessageHash, vote.getSignature(), true);
-            if (!validators.contains(address)) {
+            Integer index = indexes.get(address);
+            if (index == null) {
                 logger.println("verifyVotes","invalidVotes", "invalid signature",
                         "messageHash:", StringUtil.toString(voteMessageHash),
                         "signature:", StringUtil.toString(vote.getSignature()),
                         "address:",  StringUtil.toString(address.toString()));
                 throw BMVException.invalidVotes("invalid signature");
             }
-            if (addresses.contains(address)) {
+            if (voted[index]) {
                 logger.println("verifyVotes","invalidVotes", "duplicated vote");
                 throw BMVException.invalidVotes("duplicated vote");
-            } else {
-                addresses.add(address);
+            }
+            voted[index] = true;
+            // the rest of votes are not verified once +2/3 of validators voted
+            if (++count >= quorum) {
+                return;
             }
         }
-
-        if (addresses.size() <= (validators.getAddresses().length * 2 / 3)) {
-            logger.println("verifyVotes","invalidVotes", "require votes +2/3");
-            throw BMVException.invalidVotes("require votes +2/3");
-        }
+        logger.println("verifyVotes","invalidVotes", "require votes +2/3");
+        throw BMVException.invalidVotes("require votes +2/3");
     }
 
-    private void checkAccessible(BTPAddress curAddr, BTPAddress fromAddr) {
-        BMVProperties properties = getProperties();
+    private void checkAccessible(BMVProperties properties, BTPAddress curAddr, BTPAddress fromAddr) {
         if (!properties.getNet().equals(fromAddr.net())) {
             throw BMVException.unknown("not acceptable from");
         } else if (!Context.getCaller().equals(properties.getBmc())) {
@@ -290,10 +371,19 @@ public class BTPMessageVerifier implements BMV {
         }
     }
 
+    // Message events of the previous BMC are emitted by its account
+    private static Address toSource(BTPAddress prevAddr) {
+        try {
+            return Address.fromString(prevAddr.account());
+        } catch (IllegalArgumentException e) {
+            throw BMVException.unknown("not acceptable from");
+        }
+    }
+
     @External(readonly = true)
     public BMVStatus getStatus() {
         BMVProperties properties = getProperties();
-        MerkleTreeAccumulator mta = properties.getMta();
+        MerkleTreeAccumulator mta = getMTA();
         BMVStatus s = new BMVStatus();
         s.setHeight(mta.getHeight());
         s.setExtra(new BMVStatusExtra(
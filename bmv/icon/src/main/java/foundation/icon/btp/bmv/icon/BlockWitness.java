@@ -16,14 +16,12 @@
 
 package foundation.icon.btp.bmv.icon;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
-
-import java.util.List;
 
 public class BlockWitness {
     private long height;
@@ -62,19 +60,7 @@ public class BlockWitness {
         BlockWitness obj = new BlockWitness();
         reader.beginList();
         obj.setHeight(reader.readLong());
-        if (reader.beginNullableList()) {
-            byte[][] witness = null;
-            List<byte[]> witnessList = new ArrayList<>();
-            while(reader.hasNext()) {
-                witnessList.add(reader.readNullable(byte[].class));
-            }
-            witness = new byte[witnessList.size()][];
-            for(int i=0; i<witnessList.size(); i++) {
-                witness[i] = (byte[])witnessList.get(i);
-            }
-            obj.setWitness(witness);
-            reader.end();
-        }
+        obj.setWitness(Codec.readNullableByteArrays(reader));
         reader.end();
         return obj;
     }
@@ -82,16 +68,7 @@ public class BlockWitness {
     public void writeObject(ObjectWriter writer) {
         writer.beginList(2);
         writer.write(this.getHeight());
-        byte[][] witness = this.getWitness();
-        if (witness != null) {
-            writer.beginNullableList(witness.length);
-            for(byte[] v : witness) {
-                writer.write(v);
-            }
-            writer.end();
-        } else {
-            writer.writeNull();
-        }
+        Codec.writeNullableByteArrays(writer, this.getWitness());
         writer.end();
     }
 
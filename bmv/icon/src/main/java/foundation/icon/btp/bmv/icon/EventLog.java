@@ -16,14 +16,14 @@
 
 package foundation.icon.btp.bmv.icon;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.*;
-import scorex.util.ArrayList;
 
 import java.math.BigInteger;
-import java.util.List;
 
 public class EventLog {
+    private static final byte[] MESSAGE_SIGNATURE_PREFIX = "Message(".getBytes();
     private Address address;
     private byte[][] indexed;
     private byte[][] data;
@@ -57,6 +57,60 @@ public class EventLog {
         return s.substring(0, s.indexOf("("));
     }
 
+    /**
+     * Returns whether the encoded event log is Message event emitted by the address, without decoding it.
+     *
+     * @param bytes encoded event log, [address, [signature, ...indexed], [...data]]
+     * @param encodedAddress address of the emitter encoded with RLPn
+     * @return true if the event log is Message event of the address
+     */
+    public static boolean isMessageEvent(byte[] bytes, byte[] encodedAddress) {
+        if (bytes.length == 0 || !isList(bytes, 0)) {
+            return false;
+        }
+        int offset = headerLength(bytes, 0);
+        if (!matches(bytes, offset, encodedAddress)) {
+            return false;
+        }
+        offset += encodedAddress.length;
+        if (offset >= bytes.length || !isList(bytes, offset)) {
+            return false;
+        }
+        offset += headerLength(bytes, offset);
+        if (offset >= bytes.length || isList(bytes, offset) || (bytes[offset] & 0xff) < 0x80) {
+            return false;
+        }
+        return matches(bytes, offset + headerLength(bytes, offset), MESSAGE_SIGNATURE_PREFIX);
+    }
+
+    private static boolean isList(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xff) >= 0xc0;
+    }
+
+    private static int headerLength(byte[] bytes, int offset) {
+        int b = bytes[offset] & 0xff;
+        if (b < 0x80) {
+            return 0;
+        } else if (b <= 0xb7 || (b >= 0xc0 && b <= 0xf7)) {
+            return 1;
+        } else if (b < 0xc0) {
+            return 1 + b - 0xb7;
+        }
+        return 1 + b - 0xf7;
+    }
+
+    private static boolean matches(byte[] bytes, int offset, byte[] expected) {
+        if (offset + expected.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (bytes[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public MessageEvent toMessageEvent() {
         if (methodSignature().equals("Message")) {
             MessageEvent evt = new MessageEvent();
@@ -87,30 +141,8 @@ public class EventLog {
         EventLog obj = new EventLog();
         reader.beginList();
         obj.setAddress(reader.readNullable(Address.class));
-        reader.beginList();
-        byte[][] indexed = null;
-        List<byte[]> indexedList = new ArrayList<>();
-        while(reader.hasNext()) {
-            indexedList.add(reader.readByteArray());
-        }
-        indexed = new byte[indexedList.size()][];
-        for(int i=0; i<indexedList.size(); i++) {
-            indexed[i] = (byte[])indexedList.get(i);
-        }
-        obj.setIndexed(indexed);
-        reader.end();
-        reader.beginList();
-        byte[][] data = null;
-        List<byte[]> dataList = new ArrayList<>();
-        while(reader.hasNext()) {
-            dataList.add(reader.readByteArray());
-        }
-        data = new byte[dataList.size()][];
-        for(int i=0; i<dataList.size(); i++) {
-            data[i] = (byte[])dataList.get(i);
-        }
-        obj.setData(data);
-        reader.end();
+        obj.setIndexed(Codec.readByteArrays(reader));
+        obj.setData(Codec.readByteArrays(reader));
         reader.end();
         return obj;
     }
@@ -118,18 +150,8 @@ public class EventLog {
     public void writeObject(ObjectWriter writer) {
         writer.beginList(3);
         writer.writeNullable(this.getAddress());
-        byte[][] indexed = this.getIndexed();
-        writer.beginList(indexed.length);
-        for(byte[] v : indexed) {
-            writer.write(v);
-        }
-        writer.end();
-        byte[][] data = this.getData();
-        writer.beginList(data.length);
-        for(byte[] v : data) {
-            writer.write(v);
-        }
-        writer.end();
+        Codec.writeByteArrays(writer, this.getIndexed());
+        Codec.writeByteArrays(writer, this.getData());
         writer.end();
     }
 
@@ -16,14 +16,12 @@
 
 package foundation.icon.btp.bmv.icon;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
-
-import java.util.List;
 
 public class ExtensionData {
     private byte[][] data;
@@ -50,33 +48,12 @@ public class ExtensionData {
 
     public static ExtensionData readObject(ObjectReader reader) {
         ExtensionData obj = new ExtensionData();
-        if (reader.beginNullableList()) {
-            byte[][] data = null;
-            List<byte[]> dataList = new ArrayList<>();
-            while(reader.hasNext()) {
-                dataList.add(reader.readNullable(byte[].class));
-            }
-            data = new byte[dataList.size()][];
-            for(int i=0; i<dataList.size(); i++) {
-                data[i] = (byte[])dataList.get(i);
-            }
-            obj.setData(data);
-            reader.end();
-        }
+        obj.setData(Codec.readNullableByteArrays(reader));
         return obj;
     }
 
     public void writeObject(ObjectWriter writer) {
-        byte[][] data = this.getData();
-        if (data != null) {
-            writer.beginNullableList(data.length);
-            for(byte[] v : data) {
-                writer.writeNullable(v);
-            }
-            writer.end();
-        } else {
-            writer.writeNull();
-        }
+        Codec.writeNullableByteArrays(writer, this.getData());
     }
 
     public static ExtensionData fromBytes(byte[] bytes) {
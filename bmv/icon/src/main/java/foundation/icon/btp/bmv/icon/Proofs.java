@@ -16,14 +16,12 @@
 
 package foundation.icon.btp.bmv.icon;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
-
-import java.util.List;
 
 public class Proofs {
     private byte[][] proofs;
@@ -50,33 +48,12 @@ public class Proofs {
 
     public static Proofs readObject(ObjectReader reader) {
         Proofs obj = new Proofs();
-        if (reader.beginNullableList()) {
-            byte[][] proofs = null;
-            List<byte[]> proofsList = new ArrayList<>();
-            while(reader.hasNext()) {
-                proofsList.add(reader.readNullable(byte[].class));
-            }
-            proofs = new byte[proofsList.size()][];
-            for(int i=0; i<proofsList.size(); i++) {
-                proofs[i] = (byte[])proofsList.get(i);
-            }
-            obj.setProofs(proofs);
-            reader.end();
-        }
+        obj.setProofs(Codec.readNullableByteArrays(reader));
         return obj;
     }
 
     public void writeObject(ObjectWriter writer) {
-        byte[][] proofs = this.getProofs();
-        if (proofs != null) {
-            writer.beginNullableList(proofs.length);
-            for(byte[] v : proofs) {
-                writer.write(v);
-            }
-            writer.end();
-        } else {
-            writer.writeNull();
-        }
+        Codec.writeNullableByteArrays(writer, this.getProofs());
     }
 
     public static Proofs fromBytes(byte[] bytes) {
@@ -131,4 +131,56 @@ public class VoteMessage {
         VoteMessage.writeObject(writer, this);
         return writer.toByteArray();
     }
+
+    /**
+     * Returns the encoded fields except the timestamp, which are shared by the votes for a block.
+     */
+    public byte[] toPrefixBytes() {
+        ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+        writer.beginList(5);
+        writer.write(this.getHeight());
+        writer.write(this.getRound());
+        writer.write(this.getVoteType());
+        writer.writeNullable(this.getBlockId());
+        writer.writeNullable(this.getPartSetId());
+        writer.end();
+        byte[] bytes = writer.toByteArray();
+        int header = (bytes[0] & 0xff) > 0xf7 ? 1 + (bytes[0] & 0xff) - 0xf7 : 1;
+        byte[] prefix = new byte[bytes.length - header];
+        System.arraycopy(bytes, header, prefix, 0, prefix.length);
+        return prefix;
+    }
+
+    /**
+     * Returns the same bytes as {@link #toBytes()} of the vote message which has the fields of {@code prefix}
+     * and the timestamp.
+     *
+     * @param prefix encoded fields returned by {@link #toPrefixBytes()}
+     * @param timestamp timestamp of the vote
+     * @return encoded vote message
+     */
+    public static byte[] toBytes(byte[] prefix, long timestamp) {
+        ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+        writer.write(timestamp);
+        byte[] encodedTimestamp = writer.toByteArray();
+        int length = prefix.length + encodedTimestamp.length;
+        int sizeOfLength = 0;
+        if (length > 55) {
+            for (int l = length; l > 0; l >>= 8) {
+                sizeOfLength++;
+            }
+        }
+        byte[] bytes = new byte[1 + sizeOfLength + length];
+        if (sizeOfLength == 0) {
+            bytes[0] = (byte) (0xc0 + length);
+        } else {
+            bytes[0] = (byte) (0xf7 + sizeOfLength);
+            for (int i = sizeOfLength, l = length; i > 0; i--, l >>= 8) {
+                bytes[i] = (byte) l;
+            }
+        }
+        System.arraycopy(prefix, 0, bytes, 1 + sizeOfLength, prefix.length);
+        System.arraycopy(encodedTimestamp, 0, bytes, 1 + sizeOfLength + prefix.length, encodedTimestamp.length);
+        return bytes;
+    }
 }
@@ -0,0 +1,496 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.bmv.icon;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+import foundation.icon.btp.lib.BMVStatus;
+import foundation.icon.btp.lib.BTPAddress;
+import foundation.icon.icx.KeyWallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import score.Address;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.UserRevertedException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies block updates voted by a large synthetic validator set.
+ */
+public class BTPMessageVerifierTest extends TestBase {
+    static final ServiceManager sm = getServiceManager();
+    static final Account owner = sm.createAccount();
+    static final String NET = "0x1.icon";
+    static final int NUM_VALIDATORS = 100;
+    static final Account bmcAccount = sm.createScoreAccount();
+    static final Account prevAccount = sm.createScoreAccount();
+    static final BTPAddress bmc = new BTPAddress("0x2.icon", bmcAccount.getAddress().toString());
+    static final BTPAddress prev = new BTPAddress(NET, prevAccount.getAddress().toString());
+
+    static class ValidatorSet {
+        final KeyWallet[] wallets;
+        final Validators validators;
+
+        ValidatorSet(int size) throws Exception {
+            wallets = new KeyWallet[size];
+            Address[] addresses = new Address[size];
+            for (int i = 0; i < size; i++) {
+                wallets[i] = KeyWallet.create();
+                addresses[i] = Address.fromString(wallets[i].getAddress().toString());
+            }
+            validators = new Validators();
+            validators.setAddresses(addresses);
+        }
+
+        byte[] hash() {
+            return BTPMessageVerifier.hash(validators.toBytes());
+        }
+
+        String join() {
+            StringBuilder sb = new StringBuilder();
+            for (Address address : validators.getAddresses()) {
+                if (sb.length() > 0) sb.append(',');
+                sb.append(address);
+            }
+            return sb.toString();
+        }
+    }
+
+    Score score;
+    ValidatorSet validators;
+    long height;
+    byte[] lastBlockHash;
+
+    static BlockHeader header(long height, byte[] prevHash, byte[] nextValidatorHash) {
+        BlockHeader header = new BlockHeader();
+        header.setVersion(2);
+        header.setHeight(height);
+        header.setTimestamp(height * 1_000_000);
+        header.setPrevHash(prevHash);
+        header.setNextValidatorHash(nextValidatorHash);
+        return header;
+    }
+
+    static VoteMessage voteMessage(long height, byte[] blockHash) {
+        PartSetId partSetId = new PartSetId();
+        partSetId.setCount(1);
+        partSetId.setHash(blockHash);
+        VoteMessage voteMessage = new VoteMessage();
+        voteMessage.setHeight(height);
+        voteMessage.setRound(0);
+        voteMessage.setVoteType(VoteMessage.VOTE_TYPE_PRECOMMIT);
+        voteMessage.setBlockId(blockHash);
+        voteMessage.setPartSetId(partSetId);
+        return voteMessage;
+    }
+
+    static Votes votes(long height, byte[] blockHash, KeyWallet[] signers, int[] indexes) {
+        VoteMessage voteMessage = voteMessage(height, blockHash);
+        Vote[] items = new Vote[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            Vote vote = new Vote();
+            vote.setTimestamp(height * 1_000_000 + i);
+            voteMessage.setTimestamp(vote.getTimestamp());
+            vote.setSignature(signers[indexes[i]].sign(BTPMessageVerifier.hash(voteMessage.toBytes())));
+            items[i] = vote;
+        }
+        Votes votes = new Votes();
+        votes.setRound(0);
+        votes.setPartSetId(voteMessage.getPartSetId());
+        votes.setItems(items);
+        return votes;
+    }
+
+    @BeforeEach
+    void setup() throws Exception {
+        validators = new ValidatorSet(NUM_VALIDATORS);
+        height = 10;
+        BlockHeader header = header(height, null, validators.hash());
+        lastBlockHash = BTPMessageVerifier.hash(header.toBytes());
+        score = sm.deploy(owner, BTPMessageVerifier.class,
+                bmcAccount.getAddress(), NET, validators.join(), header.toBytes());
+        assertHeight();
+    }
+
+    /**
+     * Returns a block update following the last one, voted by the wallets at the given indexes.
+     * The next validators are applied with the update if {@code next} is not null.
+     */
+    BlockUpdate blockUpdate(KeyWallet[] signers, int[] indexes, ValidatorSet next) {
+        return blockUpdate(signers, indexes, next, null);
+    }
+
+    BlockUpdate blockUpdate(KeyWallet[] signers, int[] indexes, ValidatorSet next, byte[] receiptHash) {
+        height++;
+        BlockHeader header = header(height, lastBlockHash, (next != null ? next : validators).hash());
+        if (receiptHash != null) {
+            Result result = new Result();
+            result.setReceiptHash(receiptHash);
+            header.setResult(result);
+        }
+        lastBlockHash = BTPMessageVerifier.hash(header.toBytes());
+        BlockUpdate blockUpdate = new BlockUpdate();
+        blockUpdate.setBlockHeader(header);
+        blockUpdate.setVotes(votes(height, lastBlockHash, signers, indexes));
+        if (next != null) {
+            blockUpdate.setNextValidators(next.validators);
+            validators = next;
+        }
+        return blockUpdate;
+    }
+
+    /**
+     * Relays the block updates, the state is restored on failure.
+     */
+    void relay(BlockUpdate... blockUpdates) {
+        RelayMessage relayMessage = new RelayMessage();
+        relayMessage.setBlockUpdates(blockUpdates);
+        relay(relayMessage);
+    }
+
+    byte[][] relay(RelayMessage relayMessage) {
+        return relay(relayMessage, 0);
+    }
+
+    byte[][] relay(RelayMessage relayMessage, long seq) {
+        byte[][] ret;
+        try {
+            ret = (byte[][]) sm.call(bmcAccount, BigInteger.ZERO, score.getAddress(), "handleRelayMessage",
+                    bmc.toString(), prev.toString(), BigInteger.valueOf(seq), relayMessage.toBytes());
+        } catch (RuntimeException e) {
+            if (relayMessage.getBlockUpdates() != null) {
+                BlockHeader first = relayMessage.getBlockUpdates()[0].getBlockHeader();
+                height = first.getHeight() - 1;
+                lastBlockHash = first.getPrevHash();
+            }
+            throw e;
+        }
+        assertHeight();
+        return ret;
+    }
+
+    void assertHeight() {
+        BMVStatus status = (BMVStatus) score.call("getStatus");
+        assertEquals(height + 1, status.getHeight());
+    }
+
+    static int[] range(int from, int to) {
+        int[] ret = new int[to - from];
+        for (int i = from; i < to; i++) {
+            ret[i - from] = i;
+        }
+        return ret;
+    }
+
+    @Test
+    void verifyWithManyValidators() {
+        // more than 2/3 of 100 validators is 67
+        relay(blockUpdate(validators.wallets, range(0, 67), null));
+        relay(blockUpdate(validators.wallets, range(NUM_VALIDATORS - 67, NUM_VALIDATORS), null),
+                blockUpdate(validators.wallets, range(0, NUM_VALIDATORS), null));
+        var notEnough = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(validators.wallets, range(0, 66), null)));
+        assertTrue(notEnough.getMessage().contains("require votes +2/3"));
+    }
+
+    @Test
+    void rejectInvalidVotes() throws Exception {
+        ValidatorSet others = new ValidatorSet(NUM_VALIDATORS);
+        var invalid = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(others.wallets, range(0, 67), null)));
+        assertTrue(invalid.getMessage().contains("invalid signature"));
+
+        int[] duplicated = range(0, 67);
+        duplicated[66] = 0;
+        var duplicate = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(validators.wallets, duplicated, null)));
+        assertTrue(duplicate.getMessage().contains("duplicated vote"));
+
+        relay(blockUpdate(validators.wallets, range(0, 67), null));
+    }
+
+    /**
+     * Returns a block update voted by the wallets at the given indexes of the validators,
+     * followed by the votes of {@code others}.
+     */
+    BlockUpdate blockUpdate(int[] indexes, KeyWallet[] others) {
+        BlockUpdate blockUpdate = blockUpdate(validators.wallets, indexes, null);
+        Votes votes = blockUpdate.getVotes();
+        Votes extra = votes(height, lastBlockHash, others, range(0, others.length));
+        Vote[] items = new Vote[votes.getItems().length + others.length];
+        System.arraycopy(votes.getItems(), 0, items, 0, votes.getItems().length);
+        System.arraycopy(extra.getItems(), 0, items, votes.getItems().length, others.length);
+        votes.setItems(items);
+        return blockUpdate;
+    }
+
+    @Test
+    void skipVotesAfterQuorum() throws Exception {
+        KeyWallet[] others = new ValidatorSet(10).wallets;
+        relay(blockUpdate(range(0, 67), others));
+        // duplicated ones too
+        relay(blockUpdate(range(0, 67), new KeyWallet[]{validators.wallets[0]}));
+
+        var invalid = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(range(0, 66), others)));
+        assertTrue(invalid.getMessage().contains("invalid signature"));
+        var duplicate = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(range(0, 66), new KeyWallet[]{validators.wallets[0]})));
+        assertTrue(duplicate.getMessage().contains("duplicated vote"));
+    }
+
+    @Test
+    void verifyAfterValidatorsChanged() throws Exception {
+        ValidatorSet old = validators;
+        ValidatorSet next = new ValidatorSet(NUM_VALIDATORS);
+        // the following block update is verified by the next validators in the same relay message
+        relay(blockUpdate(validators.wallets, range(0, 67), next),
+                blockUpdate(next.wallets, range(0, 67), null));
+        relay(blockUpdate(validators.wallets, range(33, NUM_VALIDATORS), null));
+
+        var invalid = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(old.wallets, range(0, NUM_VALIDATORS), null)));
+        assertTrue(invalid.getMessage().contains("invalid signature"));
+
+        // next validators should match the hash in the header
+        BlockUpdate mismatch = blockUpdate(validators.wallets, range(0, 67), new ValidatorSet(NUM_VALIDATORS));
+        mismatch.setNextValidators(old.validators);
+        validators = next;
+        var hash = assertThrows(UserRevertedException.class, () -> relay(mismatch));
+        assertTrue(hash.getMessage().contains("invalid next validator hash"));
+
+        // smaller validator set
+        ValidatorSet small = new ValidatorSet(4);
+        relay(blockUpdate(validators.wallets, range(0, 67), small));
+        relay(blockUpdate(small.wallets, range(1, 4), null));
+        var notEnough = assertThrows(UserRevertedException.class,
+                () -> relay(blockUpdate(small.wallets, range(0, 2), null)));
+        assertTrue(notEnough.getMessage().contains("require votes +2/3"));
+    }
+
+    static EventLog eventLog(Address address, String signature, String next, long seq, byte[] msg) {
+        EventLog eventLog = new EventLog();
+        eventLog.setAddress(address);
+        eventLog.setIndexed(new byte[][]{
+                signature.getBytes(), next.getBytes(), BigInteger.valueOf(seq).toByteArray()});
+        eventLog.setData(new byte[][]{msg});
+        return eventLog;
+    }
+
+    static byte[] key(long index) {
+        ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+        writer.write(index);
+        return writer.toByteArray();
+    }
+
+    static MPTProof mptProof(Trie trie, long index, MPTProof proof) {
+        Proofs proofs = new Proofs();
+        proofs.setProofs(trie.proof(key(index)));
+        proof.setIndex(index);
+        proof.setProofs(proofs);
+        return proof;
+    }
+
+    @Test
+    void relayMessagesAmongManyEventLogs() throws Exception {
+        Address source = prevAccount.getAddress();
+        Address other = sm.createScoreAccount().getAddress();
+        String otherBmc = new BTPAddress("0x3.icon", bmcAccount.getAddress().toString()).toString();
+        List<EventLog> eventLogs = new ArrayList<>();
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            byte[] msg = ("message" + i).getBytes();
+            switch (i % 4) {
+                case 0:
+                    eventLogs.add(eventLog(other, "Message(str,int,bytes)", bmc.toString(), 1, msg));
+                    break;
+                case 1:
+                    eventLogs.add(eventLog(source, "Transfer(Address,Address,int)", bmc.toString(), 1, msg));
+                    break;
+                case 2:
+                    eventLogs.add(eventLog(source, "Message(str,int,bytes)", otherBmc, 1, msg));
+                    break;
+                default:
+                    if (i % 20 == 3) {
+                        eventLogs.add(eventLog(source, "Message(str,int,bytes)", bmc.toString(),
+                                expected.size() + 1, msg));
+                        expected.add(msg);
+                    }
+            }
+        }
+        Trie events = new Trie();
+        for (int i = 0; i < eventLogs.size(); i++) {
+            events.put(key(i), eventLogs.get(i).toBytes());
+        }
+        Receipt receipt = new Receipt();
+        receipt.setStatus(1);
+        receipt.setEventLogs(new EventLog[0]);
+        receipt.setEventLogsHash(events.root());
+        Trie receipts = new Trie();
+        receipts.put(key(0), receipt.toBytes());
+
+        MPTProof[] eventProofs = new MPTProof[eventLogs.size()];
+        for (int i = 0; i < eventProofs.length; i++) {
+            eventProofs[i] = mptProof(events, i, new MPTProof());
+        }
+        ReceiptProof receiptProof = (ReceiptProof) mptProof(receipts, 0, new ReceiptProof());
+        receiptProof.setEventProofs(eventProofs);
+
+        RelayMessage relayMessage = new RelayMessage();
+        relayMessage.setBlockUpdates(new BlockUpdate[]{
+                blockUpdate(validators.wallets, range(0, 67), null, receipts.root())});
+        relayMessage.setReceiptProofs(new ReceiptProof[]{receiptProof});
+        byte[][] ret = relay(relayMessage);
+        assertEquals(10, expected.size());
+        assertArrayEquals(expected.toArray(new byte[0][]), ret);
+    }
+
+    @Test
+    void rejectMalformedPrev() {
+        RelayMessage relayMessage = new RelayMessage();
+        relayMessage.setBlockUpdates(new BlockUpdate[]{blockUpdate(validators.wallets, range(0, 67), null)});
+        String malformed = new BTPAddress(NET, "cx1234").toString();
+        var notAcceptable = assertThrows(UserRevertedException.class,
+                () -> sm.call(bmcAccount, BigInteger.ZERO, score.getAddress(), "handleRelayMessage",
+                        bmc.toString(), malformed, BigInteger.ZERO, relayMessage.toBytes()));
+        assertTrue(notAcceptable.getMessage().contains("not acceptable from"));
+
+        // nothing is changed by the rejected message
+        relay(relayMessage);
+    }
+
+    static byte[] concatAndHash(byte[] b1, byte[] b2) {
+        byte[] data = new byte[b1.length + b2.length];
+        System.arraycopy(b1, 0, data, 0, b1.length);
+        System.arraycopy(b2, 0, data, b1.length, b2.length);
+        return BTPMessageVerifier.hash(data);
+    }
+
+    // hash of the subtree of 2^level blocks from the index
+    static byte[] subtree(List<byte[]> blockHashes, int from, int level) {
+        if (level == 0) {
+            return blockHashes.get(from);
+        }
+        return concatAndHash(subtree(blockHashes, from, level - 1),
+                subtree(blockHashes, from + (1 << (level - 1)), level - 1));
+    }
+
+    // witness of the block at the index by the accumulator of the first {@code count} blocks
+    static byte[][] witness(List<byte[]> blockHashes, int idx, int count) {
+        int from = 0;
+        for (int level = 30; level >= 0; level--) {
+            int size = 1 << level;
+            if ((count & size) == 0) {
+                continue;
+            }
+            if (idx < from + size) {
+                byte[][] witness = new byte[level][];
+                for (int i = 0; i < level; i++) {
+                    witness[i] = subtree(blockHashes, ((idx >> i) ^ 1) << i, i);
+                }
+                return witness;
+            }
+            from += size;
+        }
+        throw new IllegalArgumentException("out of range");
+    }
+
+    static RelayMessage blockProof(BlockHeader header, byte[][] witness, long at, Receipt receipt) {
+        BlockWitness blockWitness = new BlockWitness();
+        blockWitness.setHeight(at);
+        blockWitness.setWitness(witness);
+        BlockProof blockProof = new BlockProof();
+        blockProof.setBlockHeader(header);
+        blockProof.setBlockWitness(blockWitness);
+        Trie receipts = new Trie();
+        receipts.put(key(0), receipt.toBytes());
+        RelayMessage relayMessage = new RelayMessage();
+        relayMessage.setBlockProof(blockProof);
+        relayMessage.setReceiptProofs(new ReceiptProof[]{
+                (ReceiptProof) mptProof(receipts, 0, new ReceiptProof())});
+        return relayMessage;
+    }
+
+    @Test
+    void catchUpOldReceiptsByBlockProof() {
+        long offset = height;
+        List<byte[]> blockHashes = new ArrayList<>();
+        blockHashes.add(lastBlockHash);
+        List<BlockHeader> headers = new ArrayList<>();
+        headers.add(null);
+        List<Receipt> blockReceipts = new ArrayList<>();
+        blockReceipts.add(null);
+        for (int i = 1; i <= 40; i++) {
+            Receipt receipt = new Receipt();
+            receipt.setStatus(1);
+            receipt.setEventLogs(new EventLog[]{eventLog(prevAccount.getAddress(), "Message(str,int,bytes)",
+                    bmc.toString(), i, ("message" + i).getBytes())});
+            Trie receipts = new Trie();
+            receipts.put(key(0), receipt.toBytes());
+            BlockUpdate blockUpdate = blockUpdate(validators.wallets, range(0, 67), null, receipts.root());
+            relay(blockUpdate);
+            headers.add(blockUpdate.getBlockHeader());
+            blockHashes.add(lastBlockHash);
+            blockReceipts.add(receipt);
+        }
+        // blocks which are not relayed yet
+        for (int i = 41; i < 64; i++) {
+            BlockHeader header = header(offset + i, blockHashes.get(i - 1), validators.hash());
+            blockHashes.add(BTPMessageVerifier.hash(header.toBytes()));
+        }
+        BMVStatus status = (BMVStatus) score.call("getStatus");
+        long mtaHeight = status.getHeight();
+        assertEquals(offset + 41, mtaHeight);
+
+        // witnesses at the height of the mta and at the newer heights
+        int[] indexes = {3, 8, 15, 16, 31, 33, 40};
+        long[] ats = {mtaHeight, offset + 64, offset + 48, mtaHeight, offset + 42, offset + 60, mtaHeight};
+        for (int k = 0; k < indexes.length; k++) {
+            int idx = indexes[k];
+            int count = (int) (ats[k] - offset);
+            byte[][] ret = relay(blockProof(headers.get(idx), witness(blockHashes, idx, count), ats[k],
+                    blockReceipts.get(idx)), idx - 1);
+            assertEquals(1, ret.length);
+            assertArrayEquals(("message" + idx).getBytes(), ret[0]);
+            BMVStatus current = (BMVStatus) score.call("getStatus");
+            assertEquals(mtaHeight, current.getHeight());
+            BMVStatusExtra extra = BMVStatusExtra.fromBytes(current.getExtra());
+            assertEquals(offset, extra.getOffset());
+            assertEquals(offset + idx, extra.getLastHeight());
+        }
+
+        // invalid witness and the witness older than the mta
+        var invalid = assertThrows(UserRevertedException.class, () -> relay(blockProof(headers.get(5),
+                witness(blockHashes, 6, 41), mtaHeight, blockReceipts.get(5)), 4));
+        assertTrue(invalid.getMessage().contains("invalid witness"));
+        var old = assertThrows(UserRevertedException.class, () -> relay(blockProof(headers.get(5),
+                witness(blockHashes, 5, 40), mtaHeight - 1, blockReceipts.get(5)), 4));
+        assertTrue(old.getMessage().contains("not allowed old witness"));
+
+        // block updates continue from the mta
+        relay(blockUpdate(validators.wallets, range(0, 67), null));
+        relay(blockProof(headers.get(5), witness(blockHashes, 5, 42), mtaHeight + 1, blockReceipts.get(5)), 4);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.bmv.icon;
+
+import org.junit.jupiter.api.Test;
+import score.Address;
+import score.ByteArrayObjectWriter;
+import score.Context;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventLogTest {
+    static final Address source = Address.fromString("cx" + "01".repeat(20));
+    static final Address other = Address.fromString("cx" + "02".repeat(20));
+
+    static byte[] encode(Address address) {
+        ByteArrayObjectWriter writer = Context.newByteArrayObjectWriter("RLPn");
+        writer.write(address);
+        return writer.toByteArray();
+    }
+
+    static byte[] eventLog(Address address, String signature, int dataSize) {
+        return BTPMessageVerifierTest.eventLog(address, signature, "btp://0x1.icon/cx", 1,
+                new byte[dataSize]).toBytes();
+    }
+
+    @Test
+    void isMessageEvent() {
+        byte[] encoded = encode(source);
+        // short and long list headers of the event log
+        for (int dataSize : new int[]{0, 10, 100, 1000, 100000}) {
+            byte[] bytes = eventLog(source, "Message(str,int,bytes)", dataSize);
+            assertTrue(EventLog.isMessageEvent(bytes, encoded));
+            assertEquals("Message", EventLog.fromBytes(bytes).methodSignature());
+            assertFalse(EventLog.isMessageEvent(eventLog(other, "Message(str,int,bytes)", dataSize), encoded));
+            assertFalse(EventLog.isMessageEvent(eventLog(source, "Transfer(Address,int)", dataSize), encoded));
+        }
+        // long signature
+        String signature = "Message(" + "str,".repeat(20) + "bytes)";
+        assertTrue(EventLog.isMessageEvent(eventLog(source, signature, 0), encoded));
+        assertFalse(EventLog.isMessageEvent(eventLog(source, "Message", 0), encoded));
+        assertFalse(EventLog.isMessageEvent(eventLog(source, "MessageSent(str)", 0), encoded));
+    }
+
+    @Test
+    void isMessageEventWithMalformedBytes() {
+        byte[] encoded = encode(source);
+        byte[] bytes = eventLog(source, "Message(str,int,bytes)", 10);
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] truncated = new byte[i];
+            System.arraycopy(bytes, 0, truncated, 0, i);
+            assertDoesNotThrow(() -> EventLog.isMessageEvent(truncated, encoded));
+        }
+        assertFalse(EventLog.isMessageEvent(encoded, encoded));
+        assertFalse(EventLog.isMessageEvent(new byte[0], encoded));
+    }
+}
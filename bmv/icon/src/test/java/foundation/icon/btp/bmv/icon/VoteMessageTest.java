@@ -0,0 +1,63 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.bmv.icon;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class VoteMessageTest {
+    static final long[] TIMESTAMPS = {
+            0, 1, 0x7f, 0x80, 0xff, 0x100, 0x7fff, 0x8000, 1_650_000_000_000_000L,
+            Long.MAX_VALUE, -1, Long.MIN_VALUE
+    };
+
+    static void assertEncoding(VoteMessage voteMessage) {
+        byte[] prefix = voteMessage.toPrefixBytes();
+        for (long timestamp : TIMESTAMPS) {
+            voteMessage.setTimestamp(timestamp);
+            assertArrayEquals(voteMessage.toBytes(), VoteMessage.toBytes(prefix, timestamp));
+        }
+    }
+
+    @Test
+    void encodeWithPrefix() {
+        Random random = new Random(1);
+        byte[] blockHash = new byte[32];
+        random.nextBytes(blockHash);
+        PartSetId partSetId = new PartSetId();
+        partSetId.setCount(1);
+        partSetId.setHash(blockHash);
+
+        VoteMessage voteMessage = BTPMessageVerifierTest.voteMessage(100, blockHash);
+        assertEncoding(voteMessage);
+
+        // short one which has the list header of a single byte
+        voteMessage = new VoteMessage();
+        voteMessage.setHeight(1);
+        voteMessage.setVoteType(VoteMessage.VOTE_TYPE_PRECOMMIT);
+        assertEncoding(voteMessage);
+
+        // long one which has the length of two bytes in the list header
+        voteMessage = BTPMessageVerifierTest.voteMessage(Long.MAX_VALUE, new byte[300]);
+        voteMessage.setRound(3);
+        voteMessage.setPartSetId(partSetId);
+        assertEncoding(voteMessage);
+    }
+}
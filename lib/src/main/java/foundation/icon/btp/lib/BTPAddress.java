@@ -21,22 +21,30 @@ import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
 
-public class BTPAddress {
+public final class BTPAddress {
     public static final String PROTOCOL_BTP="btp";
     private static final String DELIM_PROTOCOL="://";
     private static final String DELIM_NET="/";
-    String protocol;
-    String net;
-    String account;
+    private final String protocol;
+    private final String net;
+    private final String account;
+    private final String str;
+    private final int hash;
 
     public BTPAddress(String net, String account) {
         this(PROTOCOL_BTP, net, account);
     }
 
     public BTPAddress(String protocol, String net, String account) {
+        this(protocol, net, account, protocol + DELIM_PROTOCOL + net + DELIM_NET + account);
+    }
+
+    private BTPAddress(String protocol, String net, String account, String str) {
         this.protocol = protocol;
         this.net = net;
         this.account = account;
+        this.str = str;
+        this.hash = str.hashCode();
     }
 
     public String protocol() {
@@ -53,7 +61,7 @@ public class BTPAddress {
 
     @Override
     public String toString() {
-        return protocol + DELIM_PROTOCOL + net + DELIM_NET + account;
+        return str;
     }
 
     @Override
@@ -62,12 +70,12 @@ public class BTPAddress {
         if (o == null || getClass() != o.getClass()) return false;
 
         BTPAddress that = (BTPAddress) o;
-        return toString().equals(that.toString());
+        return hash == that.hash && str.equals(that.str);
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return hash;
     }
 
     public boolean isValid() {
@@ -80,22 +88,17 @@ public class BTPAddress {
         if (str == null) {
             return null;
         }
-        String protocol = "";
-        String net = "";
-        String contract = "";
         int protocolIdx = str.indexOf(DELIM_PROTOCOL);
-        if(protocolIdx >= 0) {
-            protocol = str.substring(0, protocolIdx);
-            str = str.substring(protocolIdx + DELIM_PROTOCOL.length());
-        }
-        int netIdx = str.indexOf(DELIM_NET);
-        if (netIdx >= 0) {
-            net = str.substring(0, netIdx);
-            contract = str.substring(netIdx+DELIM_NET.length());
-        } else {
-            contract = str;
+        int netBegin = protocolIdx < 0 ? 0 : protocolIdx + DELIM_PROTOCOL.length();
+        int netIdx = str.indexOf(DELIM_NET, netBegin);
+        String protocol = protocolIdx < 0 ? "" : str.substring(0, protocolIdx);
+        String net = netIdx < 0 ? "" : str.substring(netBegin, netIdx);
+        String account = netIdx < 0 ? str.substring(netBegin) : str.substring(netIdx + DELIM_NET.length());
+        if (protocolIdx < 0 || netIdx < 0) {
+            return new BTPAddress(protocol, net, account);
         }
-        return new BTPAddress(protocol, net, contract);
+        // str is already in the canonical form
+        return new BTPAddress(protocol, net, account, str);
     }
 
     public static BTPAddress valueOf(String str) throws BTPException {
@@ -15,12 +15,12 @@
  */
 package foundation.icon.btp.lib;
 
-import foundation.icon.score.util.ArrayUtil;
-import foundation.icon.score.util.StringUtil;
 import score.Context;
-import score.ObjectReader;
+
+import scorex.util.HashMap;
 
 import java.util.Arrays;
+import java.util.Map;
 
 public class MerklePatriciaTree {
     public static class MPTException extends RuntimeException {
@@ -31,14 +31,126 @@ public class MerklePatriciaTree {
 
     public static final String HashAlgorithm = "keccak-256";
 
+    private static final int BRANCH_ITEMS = 17;
+    private static final int SHORT_ITEMS = 2;
+    private static final int VALUE_INDEX = 16;
+
     public static byte[] prove(byte[] rootHash, byte[] key, byte[][] proofs) {
         return MerklePatriciaTree.prove(HashAlgorithm, rootHash, key, proofs);
     }
 
+    /**
+     * Verifies that {@code proofs} is a path from {@code rootHash} to {@code key} and returns the value.
+     * Nodes are walked in place on the RLP encoded proofs, and each proof is hashed exactly once.
+     */
     public static byte[] prove(String hasher, byte[] rootHash, byte[] key, byte[][] proofs) {
+        return prove(hasher, rootHash, key, proofs, null);
+    }
+
+    public static byte[][] proveAll(byte[] rootHash, byte[][] keys, byte[][][] proofs) {
+        return MerklePatriciaTree.proveAll(HashAlgorithm, rootHash, keys, proofs);
+    }
+
+    /**
+     * Verifies multiple proofs against the same {@code rootHash} and returns the values in order of {@code keys}.
+     * Nodes shared by the proofs, such as the root and upper branches, are hashed and verified only once.
+     */
+    public static byte[][] proveAll(String hasher, byte[] rootHash, byte[][] keys, byte[][][] proofs) {
+        if (keys.length != proofs.length) {
+            throw new MPTException("mismatch length of keys and proofs");
+        }
+        Map<NodeHash, byte[]> nodes = new HashMap<>();
+        byte[][] values = new byte[keys.length][];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = prove(hasher, rootHash, keys[i], proofs[i], nodes);
+        }
+        return values;
+    }
+
+    private static byte[] prove(String hasher, byte[] rootHash, byte[] key, byte[][] proofs,
+            Map<NodeHash, byte[]> nodes) {
         byte[] nibbles = bytesToNibbles(key, 0, null);
-        Node node = new Node(rootHash);
-        return node.prove(hasher, nibbles, proofs, 0);
+        int cursor = 0;
+        byte[] ref = rootHash;
+        int refOffset = 0;
+        int refLength = rootHash.length;
+        next:
+        for (byte[] proof : proofs) {
+            NodeHash nodeHash = null;
+            byte[] verified = null;
+            if (nodes != null) {
+                nodeHash = new NodeHash(ref, refOffset, refLength);
+                verified = nodes.get(nodeHash);
+            }
+            if (verified != null) {
+                proof = verified;
+            } else {
+                if (!matches(Context.hash(hasher, proof), ref, refOffset, refLength)) {
+                    throw new MPTException("mismatch hash");
+                }
+                if (nodes != null) {
+                    nodes.put(nodeHash, proof);
+                }
+            }
+            int node = 0;
+            int limit = proof.length;
+            while (true) {
+                if (!isList(proof, node)) {
+                    throw new MPTException("decode failure, required list");
+                }
+                int end = itemEnd(proof, node, limit);
+                int first = node + headerLength(proof, node);
+                int child;
+                int count = countItems(proof, first, end);
+                if (count == BRANCH_ITEMS) {
+                    if (cursor == nibbles.length) {
+                        return readBytes(proof, skipItems(proof, first, VALUE_INDEX, end), end);
+                    }
+                    child = skipItems(proof, first, nibbles[cursor++], end);
+                } else if (count == SHORT_ITEMS) {
+                    if (isList(proof, first)) {
+                        throw new MPTException("decode failure, required byte[]");
+                    }
+                    int path = first + headerLength(proof, first);
+                    int pathLength = contentLength(proof, first);
+                    if (pathLength == 0) {
+                        throw new MPTException("decode failure, empty path");
+                    }
+                    int flag = (proof[path] & 0xF0) >> 4;
+                    int odd = flag & 0x1;
+                    int n = (pathLength - 1) * 2 + odd;
+                    boolean leaf = (flag & 0x2) != 0;
+                    if (!matchesPath(proof, path, odd, n, nibbles, cursor)) {
+                        throw new MPTException(leaf ? "mismatch nibbles on leaf" : "mismatch nibbles on extension");
+                    }
+                    cursor += n;
+                    child = itemEnd(proof, first, end);
+                    if (leaf) {
+                        if (cursor != nibbles.length) {
+                            throw new MPTException("mismatch nibbles on leaf");
+                        }
+                        return readBytes(proof, child, end);
+                    }
+                } else {
+                    throw new MPTException("decode failure, invalid list length " + count);
+                }
+
+                if (isList(proof, child)) {
+                    // embedded node, continue on the same proof
+                    node = child;
+                    limit = end;
+                    continue;
+                }
+                refLength = contentLength(proof, child);
+                if (refLength == 0) {
+                    throw new MPTException("mismatch nibbles on branch");
+                }
+                ref = proof;
+                refOffset = child + headerLength(proof, child);
+                continue next;
+            }
+        }
+        throw new MPTException("insufficient proofs");
     }
 
     public static byte[] bytesToNibbles(byte[] bytes, int from, byte[] nibbles) {
@@ -59,137 +171,139 @@ public class MerklePatriciaTree {
         return ret;
     }
 
-    private static class Node {
-        private byte[] hash;
-        private byte[] nibbles;
-        private Node[] children;
-        private byte[] serialized;
-        private byte[] data;
-
-        public Node() {}
-
-        public Node(byte[] hash) {
-            this.hash = hash;
-        }
-
-        public static Node readObject(ObjectReader reader) {
-            Node obj = new Node();
-            reader.beginList();
-            Object[] arr = new Object[17];
-            int i = 0;
-            while(reader.hasNext()) {
-                try {
-                    arr[i] = reader.readByteArray();
-                } catch (IllegalStateException e) {
-                    if (i < 16) {
-                        arr[i] = readObject(reader);
-                    } else {
-                        throw new MPTException("decode failure, branchNode.data required byte[]");
-                    }
-                }
-                i++;
+    private static boolean matches(byte[] hash, byte[] ref, int offset, int length) {
+        return hash.length == length && matches(hash, 0, ref, offset, length);
+    }
+
+    private static boolean matches(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
             }
-            reader.end();
-            if (i == 2) {
-                if (arr[0] instanceof byte[] && arr[1] instanceof byte[]) {
-                    byte[] header = (byte[])arr[0];
-                    int prefix = header[0] & 0xF0;
-                    byte[] nibbles = null;
-                    if ((prefix & 0x10) != 0) {
-                        nibbles = new byte[]{(byte) (header[0] & 0x0F)};
-                    }
-                    obj.nibbles = bytesToNibbles(header, 1, nibbles);
-                    if ((prefix & 0x20) != 0) {
-                        obj.data = (byte[])arr[1];
-                    } else {
-                        Node node = new Node((byte[])arr[1]);
-                        obj.children = new Node[]{node};
-                    }
-                } else {
-                    throw new MPTException("decode failure, required byte[]");
-                }
-            } else if (i == 17){
-                obj.children = new Node[16];
-                for(int j = 0; j < 16; j++) {
-                    if (arr[j] instanceof Node) {
-                        obj.children[j] = (Node) arr[j];
-                    } else if (arr[j] instanceof byte[]) {
-                        byte[] bytes = (byte[]) arr[j];
-                        if (bytes.length > 0) {
-                            obj.children[j] = new Node(bytes);
-                        }
-                    } else {
-                        throw new MPTException("decode failure, required byte[] or Node");
-                    }
-                }
-                obj.data = (byte[])arr[16];
-            } else {
-                throw new MPTException("decode failure, invalid list length "+i);
+        }
+        return true;
+    }
+
+    // compares hex-prefix encoded path nibbles with nibbles[from:from+n]
+    private static boolean matchesPath(byte[] buf, int path, int odd, int n, byte[] nibbles, int from) {
+        if (from + n > nibbles.length) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            int idx = i + 2 - odd;
+            int b = buf[path + idx / 2];
+            int nibble = (idx % 2 == 0 ? b >> 4 : b) & 0x0F;
+            if (nibble != nibbles[from + i]) {
+                return false;
             }
-            return obj;
         }
+        return true;
+    }
 
-        public static Node fromBytes(byte[] bytes) {
-            ObjectReader reader = Context.newByteArrayObjectReader("RLP", bytes);
-            return readObject(reader);
+    private static byte[] readBytes(byte[] buf, int item, int limit) {
+        if (isList(buf, item)) {
+            throw new MPTException("decode failure, required byte[]");
         }
+        int from = item + headerLength(buf, item);
+        return Arrays.copyOfRange(buf, from, itemEnd(buf, item, limit));
+    }
 
-        public byte[] prove(String hasher, byte[] nibbles, byte[][] proofs, int i) {
-            if (isHash()) {
-                byte[] serialized = proofs[i];
-                byte[] hash = Context.hash(hasher, serialized);
-                if (!Arrays.equals(this.hash, hash)) {
-                    throw new MPTException("mismatch hash");
-                }
-                Node node = Node.fromBytes(serialized);
-                node.hash = hash;
-                node.serialized = serialized;
-                return node.prove(hasher, nibbles, proofs, i+1);
-            } else if (isExtension()) {
-                int cnt = ArrayUtil.matchCount(this.nibbles, nibbles);
-                if (cnt < this.nibbles.length) {
-                    throw new MPTException("mismatch nibbles on extension");
-                }
-                return children[0].prove(hasher, Arrays.copyOfRange(nibbles, cnt, nibbles.length), proofs, i);
-            } else if (isBranch()) {
-                if(nibbles.length == 0) {
-                    return data;
-                } else {
-                    Node node = children[nibbles[0]];
-                    return node.prove(hasher, Arrays.copyOfRange(nibbles, 1, nibbles.length), proofs, i);
-                }
-            } else {
-                int cnt = ArrayUtil.matchCount(this.nibbles, nibbles);
-                if (cnt < nibbles.length) {
-                    throw new MPTException("mismatch nibbles on leaf");
-                }
-                return data;
-            }
+    private static int countItems(byte[] buf, int from, int end) {
+        int count = 0;
+        while (from < end) {
+            from = itemEnd(buf, from, end);
+            count++;
+        }
+        return count;
+    }
+
+    private static int skipItems(byte[] buf, int from, int count, int end) {
+        for (int i = 0; i < count; i++) {
+            from = itemEnd(buf, from, end);
         }
+        return from;
+    }
 
-        private boolean isHash() {
-            return hash.length > 0 && serialized == null;
+    private static boolean isList(byte[] buf, int offset) {
+        return (buf[offset] & 0xFF) >= 0xC0;
+    }
+
+    private static int headerLength(byte[] buf, int offset) {
+        int prefix = buf[offset] & 0xFF;
+        if (prefix < 0x80) {
+            return 0;
+        } else if (prefix < 0xB8) {
+            return 1;
+        } else if (prefix < 0xC0) {
+            return 1 + prefix - 0xB7;
+        } else if (prefix < 0xF8) {
+            return 1;
+        } else {
+            return 1 + prefix - 0xF7;
         }
+    }
 
-        private boolean isExtension() {
-            return children != null && children.length == 1;
+    private static int contentLength(byte[] buf, int offset) {
+        int prefix = buf[offset] & 0xFF;
+        if (prefix < 0x80) {
+            return 1;
+        } else if (prefix < 0xB8) {
+            return prefix - 0x80;
+        } else if (prefix >= 0xC0 && prefix < 0xF8) {
+            return prefix - 0xC0;
         }
+        int size = prefix < 0xC0 ? prefix - 0xB7 : prefix - 0xF7;
+        if (size > 4 || offset + size >= buf.length) {
+            throw new MPTException("decode failure, invalid length");
+        }
+        int length = 0;
+        for (int i = 1; i <= size; i++) {
+            length = (length << 8) | (buf[offset + i] & 0xFF);
+        }
+        if (length < 0) {
+            throw new MPTException("decode failure, invalid length");
+        }
+        return length;
+    }
 
-        private boolean isBranch() {
-            return children != null && children.length == 16;
+    private static int itemEnd(byte[] buf, int offset, int limit) {
+        if (offset >= limit) {
+            throw new MPTException("decode failure, out of range");
+        }
+        int end = offset + headerLength(buf, offset) + contentLength(buf, offset);
+        if (end > limit || end < offset) {
+            throw new MPTException("decode failure, out of range");
+        }
+        return end;
+    }
+
+    // view of a hash reference in a verified node, used as the key of verified nodes
+    private static class NodeHash {
+        private final byte[] buf;
+        private final int offset;
+        private final int length;
+
+        NodeHash(byte[] buf, int offset, int length) {
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
         }
 
         @Override
-        public String toString() {
-            final StringBuilder sb = new StringBuilder("Node{");
-            sb.append("hash=").append(StringUtil.toString(hash));
-            sb.append(", nibbles=").append(StringUtil.toString(nibbles));
-            sb.append(", children=").append(StringUtil.toString(children));
-            sb.append(", serialized=").append(StringUtil.toString(serialized));
-            sb.append(", data=").append(StringUtil.toString(data));
-            sb.append('}');
-            return sb.toString();
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            NodeHash that = (NodeHash) o;
+            return that.length == length && matches(that.buf, that.offset, buf, offset, length);
         }
-    }
 
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = 0; i < length; i++) {
+                h = 31 * h + buf[offset + i];
+            }
+            return h;
+        }
+    }
 }
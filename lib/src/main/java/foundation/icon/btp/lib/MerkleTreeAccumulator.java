@@ -16,15 +16,14 @@
 
 package foundation.icon.btp.lib;
 
+import foundation.icon.score.util.Codec;
 import foundation.icon.score.util.StringUtil;
 import score.ByteArrayObjectWriter;
 import score.Context;
 import score.ObjectReader;
 import score.ObjectWriter;
-import scorex.util.ArrayList;
 
 import java.util.Arrays;
-import java.util.List;
 
 public class MerkleTreeAccumulator {
     private static final int HASH_LEN = 32;
@@ -76,9 +75,18 @@ public class MerkleTreeAccumulator {
     }
 
     public void verify(byte[][] witness, byte[] hash, long height, long at) {
+        int rootIdx = getRootIdx(witness, height, at);
+        verify(witness, rootIdx, getRoot(rootIdx), hash, height - offset);
+    }
+
+    /**
+     * Returns index of the root for the witness of the node at the height, which is made
+     * by the accumulator at the height {@code at}.
+     * It's decided by the height and the offset, so the roots don't need to be loaded.
+     */
+    public int getRootIdx(byte[][] witness, long height, long at) {
         if (this.height == at) {
-            byte[] root = getRoot(witness.length);
-            verify(witness, witness.length, root, hash, height - offset);
+            return witness.length;
         } else if (this.height < at) {
             if (this.height <= height) {
                 throw new MTAException("given witness for newer node");
@@ -86,34 +94,36 @@ public class MerkleTreeAccumulator {
             if (this.offset > height) {
                 throw new MTAException("not allowed old witness");
             }
-            int rootIdx = getRootIdxByHeight(height);
-            byte[] root = getRoot(rootIdx);
-            verify(witness, rootIdx, root, hash, height - offset);
+            return getRootIdxByHeight(height);
         } else {
             throw new MTAException.InvalidWitnessOldException("not allowed old witness");
         }
     }
 
+    /**
+     * Verifies the witness with the root at the index returned by {@link #getRootIdx}.
+     */
+    public void verify(byte[][] witness, byte[] hash, long height, int rootIdx, byte[] root) {
+        verify(witness, rootIdx, root, hash, height - offset);
+    }
+
     private int getRootIdxByHeight(long height) {
         if (height < offset) {
             throw new MTAException("given height is out of range");
         }
         long idx = height -  offset;
-        int rootIdx = (roots == null ? 0 : roots.length) - 1;
-        while (roots != null && rootIdx >= 0) {
-            if (roots[rootIdx] != null) {
-                long bitFlag = 1L << rootIdx;
+        // roots[i] exists if the bit i of the number of nodes is set
+        long numOfNodes = this.height - offset;
+        for (int rootIdx = 63 - Long.numberOfLeadingZeros(numOfNodes); rootIdx >= 0; rootIdx--) {
+            long bitFlag = 1L << rootIdx;
+            if ((numOfNodes & bitFlag) != 0) {
                 if (idx < bitFlag) {
-                    break;
+                    return rootIdx;
                 }
                 idx -= bitFlag;
             }
-            rootIdx--;
-        }
-        if (rootIdx < 0) {
-            throw new MTAException("given height is out of range");
         }
-        return rootIdx;
+        throw new MTAException("given height is out of range");
     }
 
     private byte[] getRoot(int idx) {
@@ -131,6 +141,20 @@ public class MerkleTreeAccumulator {
         this.roots = roots;
     }
 
+    /**
+     * Returns roots, the root at index i covers 2^i nodes.
+     */
+    public byte[][] getRoots() {
+        return roots;
+    }
+
+    /**
+     * Sets roots, which are stored apart from the accumulator.
+     */
+    public void setRoots(byte[][] roots) {
+        this.roots = roots;
+    }
+
     public boolean isRootSizeLimitEnabled() {
         return rootSize != null && rootSize > 0;
     }
@@ -242,18 +266,7 @@ public class MerkleTreeAccumulator {
         MerkleTreeAccumulator obj = new MerkleTreeAccumulator();
         reader.beginList();
         obj.height = reader.readLong();
-        if (reader.beginNullableList()) {
-            List<byte[]> rootsList = new ArrayList<>();
-            while(reader.hasNext()) {
-                rootsList.add(reader.readNullable(byte[].class));
-            }
-            var roots = new byte[rootsList.size()][];
-            for (int i=0 ; i<roots.length ;i++) {
-                roots[i] = rootsList.get(i);
-            }
-            obj.roots = roots;
-            reader.end();
-        }
+        obj.roots = Codec.readNullableByteArrays(reader);
         obj.offset = reader.readLong();
         obj.rootSize = reader.readNullable(Integer.class);
         reader.end();
@@ -263,16 +276,7 @@ public class MerkleTreeAccumulator {
     public void writeObject(ObjectWriter writer) {
         writer.beginList(4);
         writer.write(this.height);
-        byte[][] roots = this.roots;
-        if (roots != null) {
-            writer.beginNullableList(roots.length);
-            for(byte[] v : roots) {
-                writer.writeNullable(v);
-            }
-            writer.end();
-        } else {
-            writer.writeNull();
-        }
+        Codec.writeNullableByteArrays(writer, this.roots);
         writer.write(this.offset);
         writer.writeNullable(this.rootSize);
         writer.end();
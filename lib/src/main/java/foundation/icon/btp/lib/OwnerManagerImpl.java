@@ -19,21 +19,28 @@ package foundation.icon.btp.lib;
 import score.Address;
 import score.ArrayDB;
 import score.Context;
+import score.DictDB;
 
 public class OwnerManagerImpl implements OwnerManager {
     private final ArrayDB<Address> owners;
+    // owner => array index
+    private final DictDB<Address, Integer> indexes;
 
     public OwnerManagerImpl(String id) {
         owners = Context.newArrayDB(id, Address.class);
+        indexes = Context.newDictDB(id, Integer.class);
+        int size = owners.size();
+        if (size > 0 && indexes.get(owners.get(size - 1)) == null) {
+            // owners added before the index was introduced
+            for (int i = 0; i < size; i++) {
+                indexes.set(owners.get(i), i);
+            }
+        }
     }
 
     protected int indexOf(Address address) {
-        for (int i = 0; i < owners.size(); i++) {
-            if (owners.get(i).equals(address)) {
-                return i;
-            }
-        }
-        return -1;
+        Integer idx = indexes.get(address);
+        return idx == null ? -1 : idx;
     }
 
     protected void add(Address address) throws IllegalArgumentException {
@@ -41,6 +48,7 @@ public class OwnerManagerImpl implements OwnerManager {
         if (idx >= 0) {
             throw new IllegalArgumentException("already exists owner");
         }
+        indexes.set(address, owners.size());
         owners.add(address);
     }
 
@@ -50,8 +58,10 @@ public class OwnerManagerImpl implements OwnerManager {
             throw new IllegalArgumentException("not exists owner");
         }
         Address last = owners.pop();
+        indexes.set(address, null);
         if (idx != owners.size()) {
             owners.set(idx, last);
+            indexes.set(last, idx);
         }
     }
 
@@ -61,19 +61,84 @@ public class ArrayUtil {
         return srcLen;
     }
 
+    /**
+     * Sorts the array in ascending order by heap sort, which takes O(n log n) comparisons
+     * without extra space. The sort is not stable.
+     */
     public static <T extends Comparable<T>> void sort(T[] a) {
         int len = a.length;
+        for (int i = len / 2 - 1; i >= 0; i--) {
+            siftDown(a, i, len);
+        }
+        for (int last = len - 1; last > 0; last--) {
+            T t = a[0];
+            a[0] = a[last];
+            a[last] = t;
+            siftDown(a, 0, last);
+        }
+    }
+
+    private static <T extends Comparable<T>> void siftDown(T[] a, int i, int len) {
+        T v = a[i];
+        int child;
+        while ((child = 2 * i + 1) < len) {
+            if (child + 1 < len && a[child].compareTo(a[child + 1]) < 0) {
+                child++;
+            }
+            if (v.compareTo(a[child]) >= 0) {
+                break;
+            }
+            a[i] = a[child];
+            i = child;
+        }
+        a[i] = v;
+    }
+
+    /**
+     * Sorts the array in ascending order of {@link #compare(byte[], byte[])} by heap sort.
+     */
+    public static void sort(byte[][] a) {
+        int len = a.length;
+        for (int i = len / 2 - 1; i >= 0; i--) {
+            siftDown(a, i, len);
+        }
+        for (int last = len - 1; last > 0; last--) {
+            byte[] t = a[0];
+            a[0] = a[last];
+            a[last] = t;
+            siftDown(a, 0, last);
+        }
+    }
+
+    private static void siftDown(byte[][] a, int i, int len) {
+        byte[] v = a[i];
+        int child;
+        while ((child = 2 * i + 1) < len) {
+            if (child + 1 < len && compare(a[child], a[child + 1]) < 0) {
+                child++;
+            }
+            if (compare(v, a[child]) >= 0) {
+                break;
+            }
+            a[i] = a[child];
+            i = child;
+        }
+        a[i] = v;
+    }
+
+    /**
+     * Compares byte arrays lexicographically as unsigned values, the shorter one is smaller
+     * if it's a prefix of the other.
+     */
+    public static int compare(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
         for (int i = 0; i < len; i++) {
-            T v = a[i];
-            for (int j = i + 1; j < len; j++) {
-                if (v.compareTo(a[j]) > 0) {
-                    T t = v;
-                    v = a[j];
-                    a[j] = t;
-                }
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) {
+                return diff;
             }
-            a[i] = v;
         }
+        return a.length - b.length;
     }
 
     public static BigInteger sum(BigInteger[] arr) {
@@ -90,4 +155,18 @@ public class ArrayUtil {
                 Math.min(original.length, newLength));
         return copy;
     }
+
+    public static byte[][] copyOf(byte[][] original, int newLength) {
+        byte[][] copy = new byte[newLength][];
+        System.arraycopy(original, 0, copy, 0,
+                Math.min(original.length, newLength));
+        return copy;
+    }
+
+    public static int[] copyOf(int[] original, int newLength) {
+        int[] copy = new int[newLength];
+        System.arraycopy(original, 0, copy, 0,
+                Math.min(original.length, newLength));
+        return copy;
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.score.util;
+
+import score.ObjectReader;
+import score.ObjectWriter;
+
+import java.math.BigInteger;
+
+/**
+ * Reads and writes lists of values as arrays.
+ * <p>
+ * ObjectReader doesn't expose the length of a list, so items are read into an array
+ * which grows by doubling, and it is trimmed once at the end instead of collecting
+ * items into a List and copying them one by one.
+ */
+public class Codec {
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * Reads [bytes...]
+     */
+    public static byte[][] readByteArrays(ObjectReader reader) {
+        reader.beginList();
+        byte[][] arr = readByteArrayItems(reader, false);
+        reader.end();
+        return arr;
+    }
+
+    /**
+     * Reads [bytes or null...] or null
+     */
+    public static byte[][] readNullableByteArrays(ObjectReader reader) {
+        if (!reader.beginNullableList()) {
+            return null;
+        }
+        byte[][] arr = readByteArrayItems(reader, true);
+        reader.end();
+        return arr;
+    }
+
+    private static byte[][] readByteArrayItems(ObjectReader reader, boolean nullable) {
+        byte[][] arr = new byte[INITIAL_CAPACITY][];
+        int size = 0;
+        while (reader.hasNext()) {
+            if (size == arr.length) {
+                arr = ArrayUtil.copyOf(arr, size << 1);
+            }
+            arr[size++] = nullable ? reader.readNullable(byte[].class) : reader.readByteArray();
+        }
+        return size == arr.length ? arr : ArrayUtil.copyOf(arr, size);
+    }
+
+    /**
+     * Reads [integer...]
+     */
+    public static BigInteger[] readBigIntegers(ObjectReader reader) {
+        reader.beginList();
+        BigInteger[] arr = new BigInteger[INITIAL_CAPACITY];
+        int size = 0;
+        while (reader.hasNext()) {
+            if (size == arr.length) {
+                arr = ArrayUtil.copyOf(arr, size << 1);
+            }
+            arr[size++] = reader.readBigInteger();
+        }
+        reader.end();
+        return size == arr.length ? arr : ArrayUtil.copyOf(arr, size);
+    }
+
+    /**
+     * Reads [int...]
+     */
+    public static int[] readInts(ObjectReader reader) {
+        reader.beginList();
+        int[] arr = new int[INITIAL_CAPACITY];
+        int size = 0;
+        while (reader.hasNext()) {
+            if (size == arr.length) {
+                arr = ArrayUtil.copyOf(arr, size << 1);
+            }
+            arr[size++] = reader.readInt();
+        }
+        reader.end();
+        return size == arr.length ? arr : ArrayUtil.copyOf(arr, size);
+    }
+
+    public static void writeByteArrays(ObjectWriter writer, byte[][] arr) {
+        writer.beginList(arr.length);
+        for (byte[] v : arr) {
+            writer.write(v);
+        }
+        writer.end();
+    }
+
+    public static void writeNullableByteArrays(ObjectWriter writer, byte[][] arr) {
+        if (arr == null) {
+            writer.writeNull();
+            return;
+        }
+        writer.beginNullableList(arr.length);
+        for (byte[] v : arr) {
+            writer.writeNullable(v);
+        }
+        writer.end();
+    }
+
+    public static void writeInts(ObjectWriter writer, int[] arr) {
+        writer.beginList(arr.length);
+        for (int v : arr) {
+            writer.write(v);
+        }
+        writer.end();
+    }
+
+    public static void writeBigIntegers(ObjectWriter writer, BigInteger[] arr) {
+        writer.beginList(arr.length);
+        for (BigInteger v : arr) {
+            writer.write(v);
+        }
+        writer.end();
+    }
+}
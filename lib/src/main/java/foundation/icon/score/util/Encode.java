@@ -8,11 +8,7 @@ import java.math.BigInteger;
 public class Encode {
     public static byte[] encode(BigInteger[] arr) {
         ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
-        w.beginList(arr.length);
-        for (BigInteger v : arr) {
-            w.write(v);
-        }
-        w.end();
+        Codec.writeBigIntegers(w, arr);
         return w.toByteArray();
     }
 
@@ -20,11 +16,7 @@ public class Encode {
         ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
         w.beginList(twoDimArr.length);
         for (BigInteger[] arr : twoDimArr) {
-            w.beginList(arr.length);
-            for (BigInteger v : arr) {
-                w.write(v);
-            }
-            w.end();
+            Codec.writeBigIntegers(w, arr);
         }
         w.end();
         return w.toByteArray();
@@ -16,6 +16,7 @@
 
 package foundation.icon.btp.lib;
 
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -57,4 +58,26 @@ class BTPAddressTest {
                         false)
                 );
     }
-}
\ No newline at end of file
+
+    @Test
+    void keepCanonicalForm() {
+        String str = "btp://0xb34eca.icon/cx69d93f6fe1fe6e4b150fe80004d2d2ce7fc36173";
+        BTPAddress address = BTPAddress.parse(str);
+        BTPAddress other = new BTPAddress("0xb34eca.icon", "cx69d93f6fe1fe6e4b150fe80004d2d2ce7fc36173");
+        assertSame(str, address.toString());
+        assertSame(address.toString(), address.toString());
+        assertSame(other.toString(), other.toString());
+        assertEquals(str, other.toString());
+        assertEquals(address, other);
+        assertEquals(address.hashCode(), other.hashCode());
+        assertEquals(str.hashCode(), address.hashCode());
+
+        BTPAddress parsed = BTPAddress.parse(other.toString());
+        assertEquals(other, parsed);
+        assertEquals(other.protocol(), parsed.protocol());
+        assertEquals(other.net(), parsed.net());
+        assertEquals(other.account(), parsed.account());
+        assertEquals(address, BTPAddress.fromBytes(address.toBytes()));
+        assertNotEquals(address, new BTPAddress("0xb34eca.icon", "cx0000000000000000000000000000000000000000"));
+    }
+}
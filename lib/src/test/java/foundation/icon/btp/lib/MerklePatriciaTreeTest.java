@@ -0,0 +1,261 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.lib;
+
+import org.junit.jupiter.api.Test;
+import score.Context;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MerklePatriciaTreeTest {
+    private static final String HASHER = MerklePatriciaTree.HashAlgorithm;
+
+    /**
+     * Minimal trie builder which produces the root hash and the proofs in the same way as
+     * the receipts trie of ethereum compatible chains.
+     */
+    static class Trie {
+        private final List<byte[]> keys = new ArrayList<>();
+        private final List<byte[]> values = new ArrayList<>();
+
+        void put(byte[] key, byte[] value) {
+            keys.add(key);
+            values.add(value);
+        }
+
+        byte[] root() {
+            return Context.hash(HASHER, encode(all(), 0, null, null));
+        }
+
+        byte[][] proof(byte[] key) {
+            List<byte[]> path = new ArrayList<>();
+            byte[] root = encode(all(), 0, MerklePatriciaTree.bytesToNibbles(key, 0, null), path);
+            List<byte[]> proofs = new ArrayList<>();
+            proofs.add(root);
+            for (int i = path.size() - 2; i >= 0; i--) {
+                if (path.get(i).length >= 32) {
+                    proofs.add(path.get(i));
+                }
+            }
+            return proofs.toArray(new byte[0][]);
+        }
+
+        private List<Integer> all() {
+            List<Integer> entries = new ArrayList<>();
+            for (int i = 0; i < keys.size(); i++) {
+                entries.add(i);
+            }
+            return entries;
+        }
+
+        private byte[] nibbles(int entry) {
+            return MerklePatriciaTree.bytesToNibbles(keys.get(entry), 0, null);
+        }
+
+        private byte[] encode(List<Integer> entries, int depth, byte[] target, List<byte[]> path) {
+            byte[] node;
+            if (entries.size() == 1) {
+                byte[] nibbles = nibbles(entries.get(0));
+                node = list(bytes(hexPrefix(nibbles, depth, nibbles.length, true)), bytes(values.get(entries.get(0))));
+            } else {
+                byte[] first = nibbles(entries.get(0));
+                int common = first.length;
+                for (int entry : entries) {
+                    byte[] nibbles = nibbles(entry);
+                    int i = depth;
+                    while (i < common && i < nibbles.length && nibbles[i] == first[i]) {
+                        i++;
+                    }
+                    common = i;
+                }
+                if (common > depth) {
+                    node = list(bytes(hexPrefix(first, depth, common, false)),
+                            ref(encode(entries, common, target, path)));
+                } else {
+                    byte[][] items = new byte[17][];
+                    items[16] = bytes(new byte[0]);
+                    for (int n = 0; n < 16; n++) {
+                        List<Integer> children = new ArrayList<>();
+                        for (int entry : entries) {
+                            byte[] nibbles = nibbles(entry);
+                            if (nibbles.length == depth) {
+                                items[16] = bytes(values.get(entry));
+                            } else if (nibbles[depth] == n) {
+                                children.add(entry);
+                            }
+                        }
+                        byte[] subTarget = target != null && target.length > depth && target[depth] == n ?
+                                target : null;
+                        items[n] = children.isEmpty() ?
+                                bytes(new byte[0]) : ref(encode(children, depth + 1, subTarget, path));
+                    }
+                    node = list(items);
+                }
+            }
+            if (target != null) {
+                path.add(node);
+            }
+            return node;
+        }
+
+        private byte[] ref(byte[] node) {
+            return node.length < 32 ? node : bytes(Context.hash(HASHER, node));
+        }
+
+        private static byte[] hexPrefix(byte[] nibbles, int from, int to, boolean leaf) {
+            int n = to - from;
+            byte[] ret = new byte[n / 2 + 1];
+            int flag = (leaf ? 2 : 0) + (n % 2);
+            ret[0] = (byte) (flag << 4);
+            int idx = n % 2 == 1 ? 1 : 2;
+            for (int i = from; i < to; i++, idx++) {
+                ret[idx / 2] |= (byte) (idx % 2 == 0 ? nibbles[i] << 4 : nibbles[i]);
+            }
+            return ret;
+        }
+
+        static byte[] bytes(byte[] b) {
+            if (b.length == 1 && (b[0] & 0xFF) < 0x80) {
+                return b;
+            }
+            return concat(header(0x80, b.length), b);
+        }
+
+        static byte[] list(byte[]... items) {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            for (byte[] item : items) {
+                os.writeBytes(item);
+            }
+            byte[] content = os.toByteArray();
+            return concat(header(0xC0, content.length), content);
+        }
+
+        private static byte[] header(int base, int length) {
+            if (length < 56) {
+                return new byte[]{(byte) (base + length)};
+            }
+            int size = length < 0x100 ? 1 : (length < 0x10000 ? 2 : 3);
+            byte[] ret = new byte[1 + size];
+            ret[0] = (byte) (base + 55 + size);
+            for (int i = size; i > 0; i--, length >>= 8) {
+                ret[i] = (byte) length;
+            }
+            return ret;
+        }
+
+        private static byte[] concat(byte[] a, byte[] b) {
+            byte[] ret = Arrays.copyOf(a, a.length + b.length);
+            System.arraycopy(b, 0, ret, a.length, b.length);
+            return ret;
+        }
+    }
+
+    // transaction index encoded with rlp, as used for the key of receipts trie
+    static byte[] indexKey(int i) {
+        if (i == 0) {
+            return new byte[]{(byte) 0x80};
+        } else if (i < 0x80) {
+            return new byte[]{(byte) i};
+        } else if (i < 0x100) {
+            return new byte[]{(byte) 0x81, (byte) i};
+        }
+        return new byte[]{(byte) 0x82, (byte) (i >> 8), (byte) i};
+    }
+
+    static Trie newTrie(int size, long seed) {
+        Random random = new Random(seed);
+        Trie trie = new Trie();
+        for (int i = 0; i < size; i++) {
+            // mix short values, which are embedded in the parent, and long values
+            byte[] value = new byte[random.nextBoolean() ? 1 + random.nextInt(8) : 40 + random.nextInt(200)];
+            random.nextBytes(value);
+            trie.put(indexKey(i), value);
+        }
+        return trie;
+    }
+
+    @Test
+    public void proveAllKeys() {
+        for (int size : new int[]{1, 2, 17, 130, 300}) {
+            Trie trie = newTrie(size, size);
+            byte[] root = trie.root();
+            for (int i = 0; i < size; i++) {
+                byte[] key = indexKey(i);
+                assertArrayEquals(trie.values.get(i), MerklePatriciaTree.prove(root, key, trie.proof(key)));
+            }
+        }
+    }
+
+    @Test
+    public void proveRejectsInvalidProof() {
+        Trie trie = newTrie(130, 1);
+        byte[] root = trie.root();
+        byte[] key = indexKey(0x7f);
+        byte[][] proofs = trie.proof(key);
+
+        byte[][] tampered = proofs.clone();
+        tampered[tampered.length - 1] = proofs[proofs.length - 1].clone();
+        tampered[tampered.length - 1][3] ^= 0x01;
+        assertThrows(MerklePatriciaTree.MPTException.class,
+                () -> MerklePatriciaTree.prove(root, key, tampered));
+
+        assertThrows(MerklePatriciaTree.MPTException.class,
+                () -> MerklePatriciaTree.prove(root, key, Arrays.copyOf(proofs, proofs.length - 1)));
+
+        assertThrows(MerklePatriciaTree.MPTException.class,
+                () -> MerklePatriciaTree.prove(root, indexKey(0x200), proofs));
+    }
+
+    @Test
+    public void proveAllReceiptsOfBlock() {
+        // 20 receipts from one block, all proofs share the root and upper branches
+        int size = 20;
+        Trie trie = newTrie(size, 20);
+        byte[] root = trie.root();
+        byte[][] keys = new byte[size][];
+        byte[][][] proofs = new byte[size][][];
+        for (int i = 0; i < size; i++) {
+            keys[i] = indexKey(i);
+            proofs[i] = trie.proof(keys[i]);
+        }
+        byte[][] values = MerklePatriciaTree.proveAll(root, keys, proofs);
+        assertEquals(size, values.length);
+        for (int i = 0; i < size; i++) {
+            assertArrayEquals(trie.values.get(i), values[i]);
+            assertArrayEquals(MerklePatriciaTree.prove(root, keys[i], proofs[i]), values[i]);
+        }
+
+        byte[][][] tampered = proofs.clone();
+        int last = size - 1;
+        tampered[last] = proofs[last].clone();
+        tampered[last][0] = proofs[last][0].clone();
+        tampered[last][0][3] ^= 0x01;
+        assertArrayEquals(trie.values.get(last),
+                MerklePatriciaTree.proveAll(root, keys, tampered)[last],
+                "shared node must be taken from the verified one");
+        assertThrows(MerklePatriciaTree.MPTException.class,
+                () -> MerklePatriciaTree.proveAll(root, new byte[][]{keys[last]}, new byte[][][]{tampered[last]}));
+        assertThrows(MerklePatriciaTree.MPTException.class,
+                () -> MerklePatriciaTree.proveAll(root, keys, new byte[][][]{proofs[0]}));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.btp.lib;
+
+import com.iconloop.score.test.Account;
+import com.iconloop.score.test.Score;
+import com.iconloop.score.test.ServiceManager;
+import com.iconloop.score.test.TestBase;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import score.Address;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OwnerManagerImplTest extends TestBase {
+    static final ServiceManager sm = getServiceManager();
+    static final Account owner = sm.createAccount();
+    static final int NUM_OWNERS = 50;
+
+    Score score;
+    List<Address> expected;
+
+    @BeforeEach
+    void setup() throws Exception {
+        score = sm.deploy(owner, OwnerManagerImpl.class, "owners");
+        expected = new ArrayList<>();
+        for (int i = 0; i < NUM_OWNERS; i++) {
+            Address address = sm.createAccount().getAddress();
+            score.invoke(owner, "addOwner", address);
+            expected.add(address);
+        }
+    }
+
+    void assertOwners() {
+        List<Address> owners = new ArrayList<>();
+        owners.add(owner.getAddress());
+        owners.addAll(expected);
+        assertArrayEquals(owners.toArray(), (Address[]) score.call("getOwners"));
+        for (Address address : expected) {
+            assertTrue((Boolean) score.call("isOwner", address));
+        }
+    }
+
+    void remove(int idx) {
+        Address address = expected.get(idx);
+        score.invoke(owner, "removeOwner", address);
+        // removed one is replaced by the last
+        Address last = expected.remove(expected.size() - 1);
+        if (idx != expected.size()) {
+            expected.set(idx, last);
+        }
+        assertFalse((Boolean) score.call("isOwner", address));
+    }
+
+    @Test
+    void addAndRemoveOwners() {
+        assertOwners();
+        assertTrue((Boolean) score.call("isOwner", owner.getAddress()));
+        assertFalse((Boolean) score.call("isOwner", sm.createAccount().getAddress()));
+
+        // first, middle and last
+        remove(0);
+        assertOwners();
+        remove(expected.size() / 2);
+        assertOwners();
+        remove(expected.size() - 1);
+        assertOwners();
+
+        for (int i = 0; !expected.isEmpty(); i++) {
+            remove((i * 7) % expected.size());
+        }
+        assertOwners();
+
+        Address address = sm.createAccount().getAddress();
+        score.invoke(owner, "addOwner", address);
+        expected.add(address);
+        assertOwners();
+    }
+
+    @Test
+    void ownerAccess() {
+        Account added = sm.createAccount();
+        score.invoke(owner, "addOwner", added.getAddress());
+        expected.add(added.getAddress());
+        Address address = sm.createAccount().getAddress();
+        score.invoke(added, "addOwner", address);
+        expected.add(address);
+        assertOwners();
+
+        Account notOwner = sm.createAccount();
+        assertThrows(RuntimeException.class,
+                () -> score.invoke(notOwner, "addOwner", notOwner.getAddress()));
+        assertThrows(RuntimeException.class,
+                () -> score.invoke(owner, "addOwner", expected.get(0)));
+        assertThrows(RuntimeException.class,
+                () -> score.invoke(owner, "removeOwner", notOwner.getAddress()));
+        assertThrows(RuntimeException.class,
+                () -> score.invoke(owner, "addOwner", owner.getAddress()));
+        assertOwners();
+    }
+}
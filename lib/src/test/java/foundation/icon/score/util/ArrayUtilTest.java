@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.score.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArrayUtilTest {
+    static final int[] SIZES = {0, 1, 2, 3, 10, 21, 100, 999, 1000};
+
+    @Test
+    void sortComparable() {
+        Random random = new Random(1);
+        for (int size : SIZES) {
+            BigInteger[] arr = new BigInteger[size];
+            for (int i = 0; i < size; i++) {
+                // narrow range for duplicates
+                arr[i] = BigInteger.valueOf(random.nextInt(size + 1) - size / 2);
+            }
+            BigInteger[] expected = arr.clone();
+            Arrays.sort(expected);
+            ArrayUtil.sort(arr);
+            assertArrayEquals(expected, arr);
+
+            ArrayUtil.sort(arr);
+            assertArrayEquals(expected, arr, "sorted input");
+        }
+    }
+
+    @Test
+    void sortByteArrays() {
+        Random random = new Random(2);
+        for (int size : SIZES) {
+            byte[][] arr = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                arr[i] = new byte[random.nextInt(4)];
+                random.nextBytes(arr[i]);
+            }
+            byte[][] expected = arr.clone();
+            Arrays.sort(expected, Arrays::compareUnsigned);
+            ArrayUtil.sort(arr);
+            assertArrayEquals(expected, arr);
+        }
+    }
+
+    @Test
+    void compare() {
+        byte[][] arr = {
+                new byte[0],
+                new byte[]{0x00},
+                new byte[]{0x00, 0x00},
+                new byte[]{0x01},
+                new byte[]{0x7f, (byte) 0xff},
+                new byte[]{(byte) 0x80},
+                new byte[]{(byte) 0xff},
+        };
+        for (int i = 0; i < arr.length; i++) {
+            for (int j = 0; j < arr.length; j++) {
+                assertEquals(Integer.signum(Integer.compare(i, j)),
+                        Integer.signum(ArrayUtil.compare(arr[i], arr[j])));
+            }
+        }
+    }
+}
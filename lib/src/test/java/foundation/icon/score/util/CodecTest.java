@@ -0,0 +1,181 @@
+/*
+ * Copyright 2023 ICON Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package foundation.icon.score.util;
+
+import org.junit.jupiter.api.Test;
+import score.ByteArrayObjectWriter;
+import score.Context;
+import score.ObjectReader;
+import scorex.util.ArrayList;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodecTest {
+    static final int[] SIZES = {0, 1, 7, 8, 9, 100, 1000};
+
+    static byte[][] randomByteArrays(int size, Random random) {
+        byte[][] arr = new byte[size][];
+        for (int i = 0; i < size; i++) {
+            arr[i] = new byte[random.nextInt(40)];
+            random.nextBytes(arr[i]);
+        }
+        return arr;
+    }
+
+    static BigInteger[] randomBigIntegers(int size, Random random) {
+        BigInteger[] arr = new BigInteger[size];
+        for (int i = 0; i < size; i++) {
+            arr[i] = new BigInteger(random.nextInt(260), random);
+            if (random.nextBoolean()) {
+                arr[i] = arr[i].negate();
+            }
+        }
+        return arr;
+    }
+
+    // lists were written in this way before Codec
+    static byte[] writeByteArraysOneByOne(String codec, byte[][] arr) {
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter(codec);
+        w.beginList(arr.length);
+        for (byte[] v : arr) {
+            w.write(v);
+        }
+        w.end();
+        return w.toByteArray();
+    }
+
+    // lists were read in this way before Codec
+    static byte[][] readByteArraysWithList(ObjectReader r) {
+        r.beginList();
+        List<byte[]> list = new ArrayList<>();
+        while (r.hasNext()) {
+            list.add(r.readByteArray());
+        }
+        byte[][] arr = new byte[list.size()][];
+        for (int i = 0; i < list.size(); i++) {
+            arr[i] = list.get(i);
+        }
+        r.end();
+        return arr;
+    }
+
+    @Test
+    void byteArraysRoundTrip() {
+        Random random = new Random(1);
+        for (String codec : new String[]{"RLP", "RLPn"}) {
+            for (int size : SIZES) {
+                byte[][] arr = randomByteArrays(size, random);
+                ByteArrayObjectWriter w = Context.newByteArrayObjectWriter(codec);
+                Codec.writeByteArrays(w, arr);
+                byte[] bytes = w.toByteArray();
+                assertArrayEquals(writeByteArraysOneByOne(codec, arr), bytes);
+
+                byte[][] read = Codec.readByteArrays(Context.newByteArrayObjectReader(codec, bytes));
+                assertEquals(size, read.length);
+                assertArrayEquals(arr, read);
+            }
+        }
+    }
+
+    @Test
+    void nullableByteArraysRoundTrip() {
+        Random random = new Random(2);
+        for (int size : SIZES) {
+            byte[][] arr = randomByteArrays(size, random);
+            for (int i = 0; i < size; i += 3) {
+                arr[i] = null;
+            }
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            Codec.writeNullableByteArrays(w, arr);
+            byte[][] read = Codec.readNullableByteArrays(
+                    Context.newByteArrayObjectReader("RLPn", w.toByteArray()));
+            assertArrayEquals(arr, read);
+        }
+
+        ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+        w.beginList(2);
+        Codec.writeNullableByteArrays(w, null);
+        w.write(1);
+        w.end();
+        ObjectReader r = Context.newByteArrayObjectReader("RLPn", w.toByteArray());
+        r.beginList();
+        assertNull(Codec.readNullableByteArrays(r));
+        assertEquals(1, r.readInt());
+        r.end();
+    }
+
+    @Test
+    void bigIntegersRoundTrip() {
+        Random random = new Random(3);
+        for (int size : SIZES) {
+            BigInteger[] arr = randomBigIntegers(size, random);
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            Codec.writeBigIntegers(w, arr);
+            byte[] bytes = w.toByteArray();
+            assertArrayEquals(Encode.encode(arr), bytes);
+            assertArrayEquals(arr, Codec.readBigIntegers(Context.newByteArrayObjectReader("RLPn", bytes)));
+        }
+    }
+
+    @Test
+    void intsRoundTrip() {
+        Random random = new Random(5);
+        for (int size : SIZES) {
+            int[] arr = new int[size];
+            for (int i = 0; i < size; i++) {
+                arr[i] = random.nextInt();
+            }
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            Codec.writeInts(w, arr);
+            assertArrayEquals(arr, Codec.readInts(Context.newByteArrayObjectReader("RLPn", w.toByteArray())));
+        }
+    }
+
+    @Test
+    void readByteArraysSameAsList() {
+        Random random = new Random(4);
+        // sizes around the growth of the array
+        for (int size : new int[]{0, 7, 8, 9, 16, 17, 1000}) {
+            byte[][] arr = randomByteArrays(size, random);
+            ByteArrayObjectWriter w = Context.newByteArrayObjectWriter("RLPn");
+            w.beginList(2);
+            w.beginList(arr.length);
+            for (byte[] v : arr) {
+                w.write(v);
+            }
+            w.end();
+            w.write(size);
+            w.end();
+            byte[] bytes = w.toByteArray();
+
+            ObjectReader r = Context.newByteArrayObjectReader("RLPn", bytes);
+            r.beginList();
+            byte[][] read = Codec.readByteArrays(r);
+            assertEquals(size, r.readInt());
+            r.end();
+            assertEquals(size, read.length);
+
+            r = Context.newByteArrayObjectReader("RLPn", bytes);
+            r.beginList();
+            assertArrayEquals(readByteArraysWithList(r), read);
+        }
+    }
+}